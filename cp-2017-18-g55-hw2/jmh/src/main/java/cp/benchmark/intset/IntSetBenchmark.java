@@ -0,0 +1,133 @@
+package cp.benchmark.intset;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * JMH version of the intset benchmark. The sets are built by the same
+ * createSet as the Driver runs, so every name it accepts can be given to
+ * the impl parameter.
+ *
+ * mixed() runs the operation mix of BenchmarkThread.step, with the share of
+ * updates given by writeRate, on as many threads as there are cores unless
+ * -t says otherwise. The readWrite group runs three readers that only call
+ * contains against one writer that only adds and removes, so writeRate does
+ * not apply to it.
+ *
+ * LinkedList is not thread-safe, so it is left out of the defaults and
+ * only accepted on a single thread.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the checks of validate() at teardown are asserts, and only they are
+@Fork(value = 3, jvmArgsAppend = "-enableassertions")
+public class IntSetBenchmark {
+
+  @Param({ "Synchronized", "GlobalLock", "GlobalRWLock", "GlobalStampedLock", "GlobalSpin", "GlobalTTAS",
+      "GlobalMCS", "GlobalCLH", "GlobalTicket", "GlobalCohort", "PerNodeLock", "OptimisticPerNodeLock",
+      "VersionedPerNodeLock", "LazyPerNodeLock", "OptimisticAVL", "LockFree", "SkipListLockFree", "LockFreeBST",
+      "SplitOrderedHash", "Sharded", "OpenAddressing", "LockFreeOffHeap", "LockFreeVarHandle", "Unrolled",
+      "Bitset", "CopyOnWrite", "FlatCombining", "Elimination", "Adaptive" })
+  public String impl;
+
+  @Param({ "1024" })
+  public int initialSize;
+
+  @Param({ "4096" })
+  public int range;
+
+  @Param({ "0", "20", "50" })
+  public int writeRate;
+
+  private IntSet m_set;
+
+  /** What each thread keeps between operations, like BenchmarkThread. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    private final Random m_random = new Random();
+    private boolean m_write = true;
+    private int m_last;
+  }
+
+  @Setup(Level.Trial)
+  public void setup(BenchmarkParams params) {
+    if (impl.equals("LinkedList") && params.getThreads() > 1)
+      throw new IllegalArgumentException("LinkedList is not thread-safe, run it with -t 1");
+
+    // the options that impl does not use keep the defaults of the Driver runs
+    cp.benchmark.intset.Benchmark factory = new cp.benchmark.intset.Benchmark();
+    factory.m_range = range;
+    m_set = factory.createSet(impl);
+    if (m_set == null)
+      throw new IllegalArgumentException("unknown implementation: " + impl);
+
+    Random random = new Random();
+    for (int i = 0; i < initialSize; i++)
+      m_set.add(random.nextInt(range));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    m_set.validate();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public boolean mixed(ThreadState state) {
+    if (state.m_random.nextInt(100) < writeRate)
+      return update(state);
+    return m_set.contains(state.m_random.nextInt(range));
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(3)
+  public boolean reader(ThreadState state) {
+    return m_set.contains(state.m_random.nextInt(range));
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public boolean writer(ThreadState state) {
+    return update(state);
+  }
+
+  // adds a random value, then removes it on the next call
+  private boolean update(ThreadState state) {
+    if (state.m_write) {
+      state.m_last = state.m_random.nextInt(range);
+      boolean added = m_set.add(state.m_last);
+      if (added)
+        state.m_write = false;
+      return added;
+    }
+    state.m_write = true;
+    return m_set.remove(state.m_last);
+  }
+}
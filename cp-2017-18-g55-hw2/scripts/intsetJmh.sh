@@ -0,0 +1,14 @@
+#!/bin/sh
+
+# JMH run of the IntSet implementations, from the project directory. Any
+# JMH option can be passed along, e.g.
+#   scripts/intsetJmh.sh -p impl=LockFree,LazyPerNodeLock -p writeRate=20 -t 4
+# The results go to jmh-<commit>.json, to compare runs across commits.
+
+commit=$(git rev-parse --short HEAD 2>/dev/null || echo local)
+
+(cd jmh && mvn -q -B package) || exit 1
+
+echo "Running: "java -jar jmh/target/benchmarks.jar IntSetBenchmark -rf json -rff jmh-${commit}.json "$@"
+
+java -jar jmh/target/benchmarks.jar IntSetBenchmark -rf json -rff jmh-${commit}.json "$@"
@@ -0,0 +1,38 @@
+#!/bin/sh
+
+java="java -enableassertions -verbose:gc -Xms1024M"
+
+warmup=2000
+duration=${1}
+nr_threads=${2:-1000}
+write_perc=${3:-50}
+list_impl=${4:-Synchronized}
+# carrier threads of the virtual threads, more than one so that monitors can be contended
+carriers=${5:-4}
+java="${java} -Djdk.virtualThreadScheduler.parallelism=${carriers}"
+
+
+# list_impl=LinkedList
+# list_impl=Synchronized
+# list_impl=GlobalLock
+# list_impl=GlobalRWLock
+# list_impl=PerNodeLock
+# list_impl=OptimisticPerNodeLock
+# list_impl=LazyPerNodeLock
+# list_impl=LockFree
+# list_impl=GlobalSpin
+# list_impl=GlobalTTAS
+# list_impl=GlobalMCS
+# list_impl=GlobalCLH
+# list_impl=GlobalTicket
+# list_impl=GlobalCohort
+value_range=262144
+initial_size=256
+
+echo "Running: "${java} -cp bin cp.benchmark.Driver -vt -d ${duration} -w ${warmup} -n ${nr_threads} \
+                cp.benchmark.intset.Benchmark ${list_impl} \
+                -r ${value_range} -i ${initial_size} -w ${write_perc}""
+
+${java} -cp bin cp.benchmark.Driver -vt -d ${duration} -w ${warmup} -n ${nr_threads} \
+                cp.benchmark.intset.Benchmark ${list_impl} \
+                -r ${value_range} -i ${initial_size} -w ${write_perc}
@@ -8,10 +8,21 @@ public abstract class BenchmarkThread implements Runnable {
 
   private volatile int m_phase;
   private int m_steps;
+  private boolean m_yield;
 
   public BenchmarkThread() {
     m_phase = Benchmark.WARMUP_PHASE;
     m_steps = 0;
+    m_yield = false;
+  }
+
+  /*
+   * Virtual threads are not time-sliced: one that never blocks keeps its
+   * carrier until it returns. Yielding after each step lets all of them
+   * run, like request handlers would.
+   */
+  public void setYield(boolean yield) {
+    m_yield = yield;
   }
 
   public void setPhase(int phase) {
@@ -25,10 +36,12 @@ public abstract class BenchmarkThread implements Runnable {
   public void run() {
     while (m_phase == Benchmark.WARMUP_PHASE) {
       step(Benchmark.WARMUP_PHASE);
+      if (m_yield) Thread.yield();
     }
     while (m_phase == Benchmark.TEST_PHASE) {
       step(Benchmark.TEST_PHASE);
       m_steps++;
+      if (m_yield) Thread.yield();
     }
   }
 
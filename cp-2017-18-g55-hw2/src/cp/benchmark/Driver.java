@@ -10,6 +10,7 @@ public class Driver {
     int nb_threads = 8;
     int duration = 10000;
     int warmup = 2000;
+    boolean virtual = false;
     String benchmark = null;
     boolean error = false;
     int arg;
@@ -24,6 +25,8 @@ public class Driver {
       } else if (args[arg].equals("-w")) {
         if (++arg < args.length) warmup = Integer.parseInt(args[arg]);
         else error = true;
+      } else if (args[arg].equals("-vt")) {
+        virtual = true;
       } else break;
     }
     if (arg < args.length) {
@@ -35,7 +38,11 @@ public class Driver {
 
     if (error) {
       System.out.println(
-        "Usage: java Driver [-n nb-threads] [-d duration-ms] [-w warmup-ms] benchmark [args...]");
+        "Usage: java Driver [-n nb-threads] [-d duration-ms] [-w warmup-ms] [-vt] benchmark [args...]");
+      System.exit(1);
+    }
+    if (virtual && !VirtualThreads.isSupported()) {
+      System.out.println("Virtual threads (-vt) need Java 21 or later");
       System.exit(1);
     }
 
@@ -55,8 +62,13 @@ public class Driver {
       bt[i] = b.createThread(i, bt.length);
 
     Thread[] t = new Thread[bt.length];
-    for (int i = 0; i < t.length; i++)
-      t[i] = new Thread(bt[i]);
+    for (int i = 0; i < t.length; i++) {
+      if (virtual) {
+        bt[i].setYield(true);
+        t[i] = VirtualThreads.newThread(bt[i]);
+      } else t[i] = new Thread(bt[i]);
+    }
+    VirtualThreads pinning = virtual ? new VirtualThreads() : null;
 
     System.out.print("Starting threads...");
     for (int i = 0; i < t.length; i++) {
@@ -80,12 +92,14 @@ public class Driver {
     }
     System.out.println();
 
+    if (pinning != null) pinning.startRecording();
     long tstart = System.currentTimeMillis();
     try {
       Thread.sleep(duration);
     } catch (InterruptedException e) {
     }
     long tend = System.currentTimeMillis();
+    if (pinning != null) pinning.stopRecording();
 
     System.out.print("End of test phase...");
     for (int i = 0; i < bt.length; i++) {
@@ -117,6 +131,12 @@ public class Driver {
     System.out.println("  Throughput (ops/s)   = " + steps / (tend - tstart));
     System.out.println("  Nb iterations        = " + steps);
     System.out.println("  Stats                = " + b.getStats(bt));
+    if (pinning != null) {
+      String carriers = System.getProperty("jdk.virtualThreadScheduler.parallelism", "" + Runtime.getRuntime().availableProcessors());
+      System.out.println("  Virtual threads      = " + bt.length + " on " + carriers + " carriers");
+      System.out.println("  Pinned parks         = " + pinning.getPinned());
+      System.out.println("  Pinned monitor waits = " + pinning.getBlocked());
+    }
     for (int i = 0; i < bt.length; i++)
       System.out.println("    " + i + " : " + bt[i].getSteps() + " (" + bt[i].getStats() + ")");
   }
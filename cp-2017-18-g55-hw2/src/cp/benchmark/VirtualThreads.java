@@ -0,0 +1,110 @@
+package cp.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Virtual threads for the Driver, looked up by reflection so that the
+ * benchmarks still build and run on a JDK without them (before 21).
+ *
+ * While recording, a JFR recording counts the times a virtual thread held
+ * on to its carrier: parking while pinned (jdk.VirtualThreadPinned) and
+ * blocking on a contended monitor (jdk.JavaMonitorEnter), which pins the
+ * carrier as well. The lists built on ReentrantLock park instead, which
+ * releases the carrier.
+ *
+ * @author Pascal Felber
+ * @since 0.1
+ */
+public class VirtualThreads {
+
+  private static final Method UNSTARTED;
+  private static final Object BUILDER;
+
+  static {
+    Method unstarted = null;
+    Object builder = null;
+    try {
+      builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      // the builder class itself is not exported, its interface is
+      unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+    } catch (ReflectiveOperationException e) {
+      builder = null;
+    }
+    UNSTARTED = unstarted;
+    BUILDER = builder;
+  }
+
+  private Recording m_recording;
+  private int m_pinned;
+  private long m_pinnedNanos;
+  private int m_blocked;
+  private long m_blockedNanos;
+
+  public static boolean isSupported() {
+    return BUILDER != null;
+  }
+
+  public static Thread newThread(Runnable task) {
+    if (!isSupported())
+      throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+    try {
+      return (Thread) UNSTARTED.invoke(BUILDER, task);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("cannot create a virtual thread", e);
+    }
+  }
+
+  public void startRecording() {
+    m_recording = new Recording();
+    m_recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+    m_recording.enable("jdk.JavaMonitorEnter").withThreshold(Duration.ZERO).withoutStackTrace();
+    m_recording.start();
+  }
+
+  public void stopRecording() {
+    m_recording.stop();
+    try {
+      Path file = Files.createTempFile("pinning", ".jfr");
+      try {
+        m_recording.dump(file);
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+          String name = event.getEventType().getName();
+          if (name.equals("jdk.VirtualThreadPinned")) {
+            m_pinned++;
+            m_pinnedNanos += event.getDuration().toNanos();
+          } else if (name.equals("jdk.JavaMonitorEnter") && isVirtual(event)) {
+            m_blocked++;
+            m_blockedNanos += event.getDuration().toNanos();
+          }
+        }
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      System.err.println("Cannot read the pinning events: " + e.getMessage());
+    } finally {
+      m_recording.close();
+    }
+  }
+
+  public String getPinned() {
+    return m_pinned + " (" + m_pinnedNanos / 1000000 + " ms)";
+  }
+
+  public String getBlocked() {
+    return m_blocked + " (" + m_blockedNanos / 1000000 + " ms)";
+  }
+
+  // the virtual field of threads only exists in the JFR of Java 21 on
+  private static boolean isVirtual(RecordedEvent event) {
+    return event.hasField("eventThread.virtual") && event.getBoolean("eventThread.virtual");
+  }
+}
@@ -1,6 +1,8 @@
 package cp.benchmark.intset;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * @author Pascal Felber
@@ -12,22 +14,19 @@ public class Benchmark implements cp.benchmark.Benchmark {
   IntSet m_set;
   int m_range = 1 << 16;
   int m_rate = 20;
+  int m_shards = 4;
+  String m_backing = null;
+  int m_batch = 0;
+  int m_scan = 0;
+  int m_scanLength = 100;
+  String m_nodeLock = "Reentrant";
+  boolean m_latency = false;
   int[] m_checker;
 
   public void init(String[] args) {
     boolean error = false;
     int initial = 256;
-    if (args.length > 0) {
-      if (args[0].equals("LinkedList")) m_set = new IntSetLinkedList();
-      else if (args[0].equals("Synchronized")) m_set = new IntSetLinkedListSynchronized();
-      else if (args[0].equals("GlobalLock")) m_set = new IntSetLinkedListGlobalLock();
-      else if (args[0].equals("GlobalRWLock")) m_set = new IntSetLinkedListGlobalRWLock();
-      else if (args[0].equals("PerNodeLock")) m_set = new IntSetLinkedListPerNodeLock();
-      else if (args[0].equals("OptimisticPerNodeLock")) m_set = new IntSetLinkedListOptimisticPerNodeLock();
-      else if (args[0].equals("LazyPerNodeLock")) m_set = new IntSetLinkedListLazyPerNodeLock();
-      else if (args[0].equals("LockFree")) m_set = new IntSetLinkedListLockFree();
-      else error = true;
-    } else error = true;
+    if (args.length == 0) error = true;
     for (int i = 1; i < args.length && !error; i++) {
       if (args[i].equals("-i")) {
         if (++i < args.length) initial = Integer.parseInt(args[i]);
@@ -38,40 +37,198 @@ public class Benchmark implements cp.benchmark.Benchmark {
       } else if (args[i].equals("-w")) {
         if (++i < args.length) m_rate = Integer.parseInt(args[i]);
         else error = true;
+      } else if (args[i].equals("-s")) {
+        if (++i < args.length) m_shards = Integer.parseInt(args[i]);
+        else error = true;
+      } else if (args[i].equals("-b")) {
+        if (++i < args.length) m_backing = args[i];
+        else error = true;
+      } else if (args[i].equals("-a")) {
+        if (++i < args.length) m_batch = Integer.parseInt(args[i]);
+        else error = true;
+      } else if (args[i].equals("-q")) {
+        if (++i < args.length) m_scan = Integer.parseInt(args[i]);
+        else error = true;
+      } else if (args[i].equals("-l")) {
+        if (++i < args.length) m_scanLength = Integer.parseInt(args[i]);
+        else error = true;
+      } else if (args[i].equals("-k")) {
+        if (++i < args.length) m_nodeLock = args[i];
+        else error = true;
+      } else if (args[i].equals("-p")) {
+        m_latency = true;
       } else error = true;
     }
+    if (NodeLock.factory(m_nodeLock) == null) error = true;
+    m_checker = new int[m_range];
+    long memory = usedMemory();
+    if (!error) {
+      m_set = createSet(args[0]);
+      error = m_set == null;
+    }
+    if (!error && m_scan > 0) {
+      try {
+        m_set.range(0, 0);
+      } catch (UnsupportedOperationException e) {
+        System.out.println(e.getMessage());
+        error = true;
+      }
+    }
     if (error) {
       System.out.println(
-          "Benchmark arguments: (LinkedList|Synchronized|GlobalLock|GlobalRWLock|PerNodeLock|OptimisticPerNodeLock|LazyPerNodeLock|LockFree) [-i initial-size] [-r range] [-w write-rate]");
+          "Benchmark arguments: (LinkedList|Synchronized|GlobalLock|GlobalRWLock|GlobalStampedLock|GlobalSpin|GlobalTTAS|GlobalMCS|GlobalCLH|GlobalTicket|GlobalCohort|PerNodeLock|OptimisticPerNodeLock|VersionedPerNodeLock|LazyPerNodeLock|OptimisticAVL|LockFree|SkipListLockFree|LockFreeBST|SplitOrderedHash|Sharded|OpenAddressing|LockFreeOffHeap|LockFreeVarHandle|Unrolled|Bitset|CopyOnWrite|FlatCombining|Elimination|Adaptive) [-i initial-size] [-r range] [-w write-rate] [-s nb-shards] [-b backing-impl] [-a batch-size] [-q scan-rate] [-l scan-length] [-k (" + NodeLock.KINDS + ")] [-p]");
       System.exit(1);
     }
     Random random = new Random();
-    m_checker = new int[m_range];
+    int size = 0;
     for (int i = 0; i < initial; i++) {
       int elem = random.nextInt(m_range);
-      if (m_set.add(elem)) m_checker[elem]++;
+      if (m_set.add(elem)) {
+        m_checker[elem]++;
+        size++;
+      }
     }
+    memory = usedMemory() - memory;
     System.out.println("Initial size        = " + initial);
     System.out.println("Range               = " + m_range);
     System.out.println("Write rate          = " + m_rate + "%");
+    if (m_batch > 0)
+      System.out.println("Batch size          = " + m_batch);
+    if (m_scan > 0)
+      System.out.println("Scan rate           = " + m_scan + "% (length " + m_scanLength + ")");
+    if (m_latency)
+      System.out.println("Latencies           = " + (m_batch > 0 ? "not measured for batches" : "add, remove and contains"));
     System.out.println("List implementation = " + m_set.getClass().getSimpleName());
+    if (m_set instanceof IntSetSharded)
+      System.out.println("Shards              = " + m_shards + " x " + backing("LockFree"));
+    if (m_set instanceof IntSetFlatCombining)
+      System.out.println("Combined set        = " + backing("LinkedList"));
+    if (m_set instanceof IntSetElimination)
+      System.out.println("Eliminating for     = " + backing("GlobalLock"));
+    if (m_set instanceof IntSetAdaptive)
+      System.out.println("Fine-grained set    = " + backing("LazyPerNodeLock"));
+    if (m_set.getClass().getSimpleName().endsWith("PerNodeLock"))
+      System.out.println("Node lock           = " + m_nodeLock);
+    System.out.println("Set memory (bytes)  = " + memory + " (" + (size > 0 ? memory / size : 0) + " per element)");
     System.out.println();
   }
 
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++)
+      System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  IntSet createSet(String name) {
+    if (name.equals("LinkedList")) return new IntSetLinkedList();
+    else if (name.equals("Synchronized")) return new IntSetLinkedListSynchronized();
+    else if (name.equals("GlobalLock")) return new IntSetLinkedListGlobalLock();
+    else if (name.equals("GlobalRWLock")) return new IntSetLinkedListGlobalRWLock();
+    else if (name.equals("GlobalStampedLock")) return new IntSetLinkedListGlobalStampedLock();
+    else if (name.equals("GlobalSpin")) return new IntSetLinkedListGlobalLock(new NodeLock.Spin());
+    else if (name.equals("GlobalTTAS")) return new IntSetLinkedListGlobalLock(new NodeLock.TTAS());
+    else if (name.equals("GlobalMCS")) return new IntSetLinkedListGlobalLock(new NodeLock.MCS());
+    else if (name.equals("GlobalCLH")) return new IntSetLinkedListGlobalLock(new NodeLock.CLH());
+    else if (name.equals("GlobalTicket")) return new IntSetLinkedListGlobalLock(new NodeLock.Ticket());
+    else if (name.equals("GlobalCohort")) return new IntSetLinkedListGlobalLock(new NodeLock.Cohort());
+    else if (name.equals("PerNodeLock")) return new IntSetLinkedListPerNodeLock(NodeLock.factory(m_nodeLock));
+    else if (name.equals("OptimisticPerNodeLock")) return new IntSetLinkedListOptimisticPerNodeLock(NodeLock.factory(m_nodeLock));
+    else if (name.equals("VersionedPerNodeLock")) return new IntSetLinkedListVersionedPerNodeLock(NodeLock.factory(m_nodeLock));
+    else if (name.equals("LazyPerNodeLock")) return new IntSetLinkedListLazyPerNodeLock(NodeLock.factory(m_nodeLock));
+    else if (name.equals("OptimisticAVL")) return new IntSetOptimisticAVL();
+    else if (name.equals("LockFree")) return new IntSetLinkedListLockFree();
+    else if (name.equals("LockFreeOffHeap")) return new IntSetLinkedListLockFreeOffHeap();
+    else if (name.equals("LockFreeVarHandle")) return new IntSetLinkedListLockFreeVarHandle();
+    else if (name.equals("Unrolled")) return new IntSetLinkedListUnrolled();
+    else if (name.equals("Bitset")) return new IntSetBitset(m_range);
+    else if (name.equals("CopyOnWrite")) return new IntSetCopyOnWrite();
+    else if (name.equals("SkipListLockFree")) return new IntSetSkipListLockFree();
+    else if (name.equals("LockFreeBST")) return new IntSetLockFreeBST();
+    else if (name.equals("SplitOrderedHash")) return new IntSetSplitOrderedHash();
+    else if (name.equals("OpenAddressing")) return new IntSetOpenAddressing();
+    else if (name.equals("Sharded") && !backing("LockFree").equals("Sharded") && m_shards > 0) {
+      IntSet[] shards = new IntSet[m_shards];
+      for (int i = 0; i < shards.length; i++) {
+        shards[i] = createSet(backing("LockFree"));
+        if (shards[i] == null) return null;
+      }
+      return new IntSetSharded(shards, m_range);
+    }
+    else if (name.equals("FlatCombining") && !backing("LinkedList").equals("FlatCombining")) {
+      IntSet set = createSet(backing("LinkedList"));
+      return set == null ? null : new IntSetFlatCombining(set);
+    }
+    else if (name.equals("Elimination") && !backing("GlobalLock").equals("Elimination")) {
+      IntSet set = createSet(backing("GlobalLock"));
+      return set == null ? null : new IntSetElimination(set);
+    }
+    else if (name.equals("Adaptive") && !backing("LazyPerNodeLock").equals("Adaptive")) {
+      // the migrations scan the whole fine-grained set
+      IntSet set = createSet(backing("LazyPerNodeLock"));
+      try {
+        if (set == null || set.range(0, 0) == null) return null;
+      } catch (UnsupportedOperationException e) {
+        return null;
+      }
+      return new IntSetAdaptive(sets(set, backing("LazyPerNodeLock")));
+    }
+    else return null;
+  }
+
+  // hands out first, then new sets of the given name
+  private Supplier<IntSet> sets(IntSet first, String name) {
+    AtomicReference<IntSet> next = new AtomicReference<>(first);
+    return () -> {
+      IntSet set = next.getAndSet(null);
+      return set != null ? set : createSet(name);
+    };
+  }
+
+  // the -b option, or the default backing set of the wrapper
+  private String backing(String fallback) {
+    return m_backing != null ? m_backing : fallback;
+  }
+
   public cp.benchmark.BenchmarkThread createThread(int i, int nb) {
-    return new BenchmarkThread(m_set, m_range, m_rate);
+    return new BenchmarkThread(m_set, m_range, m_rate, m_batch, m_scan, m_scanLength, m_latency);
   }
 
   public String getStats(cp.benchmark.BenchmarkThread[] threads) {
     int add = 0;
     int remove = 0;
     int contains = 0;
+    int scan = 0;
     for (int i = 0; i < threads.length; i++) {
       add += ((BenchmarkThread) threads[i]).m_nb_add;
       remove += ((BenchmarkThread) threads[i]).m_nb_remove;
       contains += ((BenchmarkThread) threads[i]).m_nb_contains;
+      scan += ((BenchmarkThread) threads[i]).m_nb_scan;
     }
-    return "A=" + add + ", R=" + remove + ", C=" + contains;
+    String stats = "A=" + add + ", R=" + remove + ", C=" + contains + ", S=" + scan;
+    if (m_set instanceof IntSetElimination)
+      stats += ", E=" + ((IntSetElimination) m_set).getEliminated();
+    if (m_set instanceof IntSetAdaptive)
+      stats += ", M=" + ((IntSetAdaptive) m_set).getMigrations() + (((IntSetAdaptive) m_set).isCoarse() ? " (coarse)" : " (fine)");
+    if (m_latency && m_batch == 0) {
+      LatencyHistogram addLatency = new LatencyHistogram();
+      LatencyHistogram removeLatency = new LatencyHistogram();
+      LatencyHistogram containsLatency = new LatencyHistogram();
+      for (int i = 0; i < threads.length; i++) {
+        addLatency.merge(((BenchmarkThread) threads[i]).m_addLatency);
+        removeLatency.merge(((BenchmarkThread) threads[i]).m_removeLatency);
+        containsLatency.merge(((BenchmarkThread) threads[i]).m_containsLatency);
+      }
+      stats += String.format("%n  %-21s%9s%9s%9s%9s%9s", "Latency (us)", "p50", "p90", "p99", "p99.9", "max");
+      stats += latencies("add", addLatency) + latencies("remove", removeLatency) + latencies("contains", containsLatency);
+    }
+    return stats;
+  }
+
+  private static String latencies(String name, LatencyHistogram histogram) {
+    return String.format("%n    %-19s%9.2f%9.2f%9.2f%9.2f%9.2f", name, histogram.percentile(50) / 1000.0,
+        histogram.percentile(90) / 1000.0, histogram.percentile(99) / 1000.0, histogram.percentile(99.9) / 1000.0,
+        histogram.getMax() / 1000.0);
   }
 
   public void validate(cp.benchmark.BenchmarkThread[] threads) {
@@ -84,10 +241,13 @@ public class Benchmark implements cp.benchmark.Benchmark {
         m_checker[j] += thread_checker[j];
       }
     }
+    int size = 0;
     for (int i = 0; i < m_range; i++) {
       assert m_checker[i] == 0 || m_checker[i] == 1;
+      size += m_checker[i];
       if (m_checker[i] == 0) assert !m_set.contains(i) : i + " shouldn't exist in list";
       else assert m_set.contains(i) : i + " should exist in list";
     } 
+    assert m_set.size() == size : "set has a size of " + m_set.size() + " but it should be " + size;
   }
 }
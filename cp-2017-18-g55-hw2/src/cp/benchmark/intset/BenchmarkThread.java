@@ -1,5 +1,6 @@
 package cp.benchmark.intset;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -12,44 +13,142 @@ public class BenchmarkThread extends cp.benchmark.BenchmarkThread {
   int m_nb_add;
   int m_nb_remove;
   int m_nb_contains;
+  int m_nb_scan;
   private final int m_rate;
   boolean m_write;
   int m_last;
   private final Random m_random;
   final int[] m_checker;
+  private final int m_batch;
+  private int[] m_lastBatch;
+  private final boolean[] m_results;
+  private final int m_scan;
+  private final int m_scanLength;
+  // null unless latencies are measured
+  final LatencyHistogram m_addLatency;
+  final LatencyHistogram m_removeLatency;
+  final LatencyHistogram m_containsLatency;
 
   public BenchmarkThread(IntSet set, int range, int rate) {
+    this(set, range, rate, 0);
+  }
+
+  public BenchmarkThread(IntSet set, int range, int rate, int batch) {
+    this(set, range, rate, batch, 0, 0);
+  }
+
+  public BenchmarkThread(IntSet set, int range, int rate, int batch, int scan, int scanLength) {
+    this(set, range, rate, batch, scan, scanLength, false);
+  }
+
+  public BenchmarkThread(IntSet set, int range, int rate, int batch, int scan, int scanLength, boolean latency) {
     m_set = set;
     m_range = range;
-    m_nb_add = m_nb_remove = m_nb_contains = 0;
+    m_nb_add = m_nb_remove = m_nb_contains = m_nb_scan = 0;
     m_rate = rate;
     m_write = true;
     m_random = new Random();
     m_checker = new int[range];
+    m_batch = batch;
+    m_results = new boolean[batch];
+    m_scan = scan;
+    m_scanLength = scanLength;
+    m_addLatency = latency ? new LatencyHistogram() : null;
+    m_removeLatency = latency ? new LatencyHistogram() : null;
+    m_containsLatency = latency ? new LatencyHistogram() : null;
   }
 
   protected void step(int phase) {
+    // scans are drawn first and take their share from the other operations
+    if (m_scan > 0 && m_random.nextInt(100) < m_scan) {
+      int lo = m_random.nextInt(m_range);
+      m_set.range(lo, lo + m_scanLength);
+      if (phase == Benchmark.TEST_PHASE) m_nb_scan++;
+      return;
+    }
+    if (m_batch > 0) {
+      stepBatch(phase);
+      return;
+    }
+    // only the set operation is timed, the random draws are done before
+    boolean timed = m_addLatency != null && phase == Benchmark.TEST_PHASE;
     int i = m_random.nextInt(100);
     if (i < m_rate) {
       if (m_write) {
         m_last = m_random.nextInt(m_range);
-        if (m_set.add(m_last)) {
+        long start = timed ? System.nanoTime() : 0;
+        boolean result = m_set.add(m_last);
+        if (timed) m_addLatency.record(System.nanoTime() - start);
+        if (result) {
           m_write = false;
           m_checker[m_last]++;
         }
         if (phase == Benchmark.TEST_PHASE) m_nb_add++;
       } else {
-        if (m_set.remove(m_last)) m_checker[m_last]--;
+        long start = timed ? System.nanoTime() : 0;
+        boolean result = m_set.remove(m_last);
+        if (timed) m_removeLatency.record(System.nanoTime() - start);
+        if (result) m_checker[m_last]--;
         if (phase == Benchmark.TEST_PHASE) m_nb_remove++;
         m_write = true;
       }
     } else {
-      m_set.contains(m_random.nextInt(m_range));
+      int value = m_random.nextInt(m_range);
+      long start = timed ? System.nanoTime() : 0;
+      m_set.contains(value);
+      if (timed) m_containsLatency.record(System.nanoTime() - start);
       if (phase == Benchmark.TEST_PHASE) m_nb_contains++;
     }
   }
 
+  /*
+   * Batch mode: each step applies a whole sorted batch of keys, and the
+   * counters count keys rather than calls. A removal batch takes back the
+   * keys that the previous add batch actually inserted, like m_last does.
+   */
+  private void stepBatch(int phase) {
+    int i = m_random.nextInt(100);
+    if (i < m_rate) {
+      if (m_write) {
+        int[] values = nextBatch();
+        int added = m_set.addAll(values, m_results);
+        if (added > 0) {
+          m_lastBatch = new int[added];
+          for (int j = 0, k = 0; j < values.length; j++) {
+            if (m_results[j]) {
+              m_lastBatch[k++] = values[j];
+              m_checker[values[j]]++;
+            }
+          }
+          m_write = false;
+        }
+        if (phase == Benchmark.TEST_PHASE) m_nb_add += values.length;
+      } else {
+        m_set.removeAll(m_lastBatch, m_results);
+        for (int j = 0; j < m_lastBatch.length; j++)
+          if (m_results[j]) m_checker[m_lastBatch[j]]--;
+        if (phase == Benchmark.TEST_PHASE) m_nb_remove += m_lastBatch.length;
+        m_write = true;
+      }
+    } else {
+      int[] values = nextBatch();
+      m_set.containsAll(values, m_results);
+      if (phase == Benchmark.TEST_PHASE) m_nb_contains += values.length;
+    }
+  }
+
+  private int[] nextBatch() {
+    int[] values = new int[m_batch];
+    for (int i = 0; i < values.length; i++)
+      values[i] = m_random.nextInt(m_range);
+    Arrays.sort(values);
+    int size = 0;
+    for (int i = 0; i < values.length; i++)
+      if (size == 0 || values[i] != values[size - 1]) values[size++] = values[i];
+    return size == values.length ? values : Arrays.copyOf(values, size);
+  }
+
   public String getStats() {
-    return "A=" + m_nb_add + ", R=" + m_nb_remove + ", C=" + m_nb_contains;
+    return "A=" + m_nb_add + ", R=" + m_nb_remove + ", C=" + m_nb_contains + ", S=" + m_nb_scan;
   }
 }
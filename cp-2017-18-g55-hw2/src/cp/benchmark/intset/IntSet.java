@@ -14,4 +14,66 @@ public interface IntSet {
   public boolean contains(int value);
 
   public void validate();
+
+  /*
+   * Consistent scans: range returns the sorted values in [lo, hi) as they
+   * were at a single point in time, even under concurrent updates. Sets
+   * that cannot provide such a snapshot keep the defaults, which throw.
+   */
+
+  public default int[] range(int lo, int hi) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support consistent scans");
+  }
+
+  /*
+   * The sets of this package override size() with counters updated by each
+   * successful add or remove, so it takes constant time. Under concurrent
+   * updates it may miss the ones in flight, and it is exact once they stop.
+   */
+
+  public default int size() {
+    return range(Integer.MIN_VALUE, Integer.MAX_VALUE).length;
+  }
+
+  public default java.util.PrimitiveIterator.OfInt iterator() {
+    return java.util.Arrays.stream(range(Integer.MIN_VALUE, Integer.MAX_VALUE)).iterator();
+  }
+
+  /*
+   * Bulk operations. values must be sorted in strictly increasing order;
+   * results[i] (if results is not null) receives the outcome of the single
+   * operation on values[i], and the number of successful ones is returned.
+   * Each value is applied atomically, but not the batch as a whole.
+   * Implementations that can apply a batch in one pass override these.
+   */
+
+  public default int addAll(int[] values, boolean[] results) {
+    int count = 0;
+    for (int i = 0; i < values.length; i++) {
+      boolean result = add(values[i]);
+      if (results != null) results[i] = result;
+      if (result) count++;
+    }
+    return count;
+  }
+
+  public default int removeAll(int[] values, boolean[] results) {
+    int count = 0;
+    for (int i = 0; i < values.length; i++) {
+      boolean result = remove(values[i]);
+      if (results != null) results[i] = result;
+      if (result) count++;
+    }
+    return count;
+  }
+
+  public default int containsAll(int[] values, boolean[] results) {
+    int count = 0;
+    for (int i = 0; i < values.length; i++) {
+      boolean result = contains(values[i]);
+      if (results != null) results[i] = result;
+      if (result) count++;
+    }
+    return count;
+  }
 }
@@ -0,0 +1,363 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Set that switches at runtime between a global lock over a sequential list
+ * and a fine-grained set (LazyPerNodeLock by default), depending on the
+ * contention it observes.
+ *
+ * In coarse mode, an operation first tries the lock and counts a failure as
+ * contention. In fine mode, operations periodically look at how many others
+ * are in flight. Each thread judges its own window of operations, so the
+ * statistics are not shared, and asks for a migration when the other mode
+ * looks better, with some hysteresis so that the mode does not flap.
+ *
+ * Operations announce themselves in striped counters before reading the
+ * current mode. A migration raises a flag, waits for the counters to drain,
+ * copies a full scan of the old set into the new one and switches over, so
+ * no operation ever runs on a set that is not the current one.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetAdaptive implements IntSet {
+
+  static final int STRIPES = 16;
+  // one counter per cache line
+  static final int STRIPE_SHIFT = 4;
+  static final int WINDOW = 8192;
+  static final int SAMPLE_PERIOD = 64;
+  // coarse to fine above this share of contended acquisitions
+  static final double CONTENDED_HIGH = 0.2;
+  // fine to coarse below this share of samples with company
+  static final double CONCURRENT_LOW = 0.1;
+
+  public class Mode {
+    private final IntSet m_set;
+    private final boolean m_coarse;
+
+    public Mode(IntSet set, boolean coarse) {
+      m_set = set;
+      m_coarse = coarse;
+    }
+
+    public boolean isCoarse() {
+      return m_coarse;
+    }
+  }
+
+  public class Stats {
+    private Mode m_mode;
+    private int m_ops;
+    private int m_contended;
+    private int m_samples;
+    private int m_concurrent;
+  }
+
+  private volatile Mode m_mode;
+  private final Supplier<IntSet> m_fine;
+  private final ReentrantLock m_lock;
+  private final AtomicIntegerArray m_active;
+  private final AtomicBoolean m_migrating;
+  private final AtomicInteger m_migrations;
+  private final ThreadLocal<Stats> m_stats;
+
+  public IntSetAdaptive() {
+    this(IntSetLinkedListLazyPerNodeLock::new);
+  }
+
+  /**
+   * The fine-grained sets must support range(), which the migrations use.
+   */
+  public IntSetAdaptive(Supplier<IntSet> fine) {
+    m_fine = fine;
+    m_lock = new ReentrantLock();
+    m_active = new AtomicIntegerArray(STRIPES << STRIPE_SHIFT);
+    m_migrating = new AtomicBoolean(false);
+    m_migrations = new AtomicInteger();
+    m_stats = ThreadLocal.withInitial(Stats::new);
+    m_mode = new Mode(new IntSetLinkedList(), true);
+  }
+
+  public boolean isCoarse() {
+    return m_mode.isCoarse();
+  }
+
+  public int getMigrations() {
+    return m_migrations.get();
+  }
+
+  public boolean add(int value) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    boolean result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.add(value);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.add(value);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  public boolean remove(int value) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    boolean result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.remove(value);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.remove(value);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  public boolean contains(int value) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    boolean result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.contains(value);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.contains(value);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  // a scan or a batch counts as a single operation in the statistics
+  public int[] range(int lo, int hi) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    int[] result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.range(lo, hi);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.range(lo, hi);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    int result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.addAll(values, results);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.addAll(values, results);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    int result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.removeAll(values, results);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.removeAll(values, results);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    int stripe = enter();
+    Mode mode = m_mode;
+    int result;
+    try {
+      if (mode.m_coarse) {
+        lock();
+        try {
+          result = mode.m_set.containsAll(values, results);
+        } finally {
+          m_lock.unlock();
+        }
+      } else {
+        sample();
+        result = mode.m_set.containsAll(values, results);
+      }
+    } finally {
+      exit(stripe);
+    }
+    adapt(mode);
+    return result;
+  }
+
+  public int size() {
+    int stripe = enter();
+    try {
+      Mode mode = m_mode;
+      if (!mode.m_coarse)
+        return mode.m_set.size();
+      m_lock.lock();
+      try {
+        return mode.m_set.size();
+      } finally {
+        m_lock.unlock();
+      }
+    } finally {
+      exit(stripe);
+    }
+  }
+
+  public void validate() {
+    assert !m_migrating.get() : "a migration is still running";
+    for (int i = 0; i < STRIPES; i++)
+      assert m_active.get(i << STRIPE_SHIFT) == 0 : "stripe " + i + " still has operations in flight";
+    m_mode.m_set.validate();
+  }
+
+  /*
+   * Announces an operation, after waiting for a migration to complete. The
+   * increment comes before the read of the flag, and the migration raises
+   * the flag before reading the counters, so one of them sees the other.
+   */
+  private int enter() {
+    int stripe = (int) (Thread.currentThread().getId() % STRIPES) << STRIPE_SHIFT;
+    while (true) {
+      m_active.getAndIncrement(stripe);
+      if (!m_migrating.get())
+        return stripe;
+      m_active.getAndDecrement(stripe);
+      while (m_migrating.get())
+        Thread.yield();
+    }
+  }
+
+  private void exit(int stripe) {
+    m_active.getAndDecrement(stripe);
+  }
+
+  private void lock() {
+    if (m_lock.tryLock())
+      return;
+    m_stats.get().m_contended++;
+    m_lock.lock();
+  }
+
+  private void sample() {
+    Stats stats = m_stats.get();
+    if (stats.m_ops % SAMPLE_PERIOD != 0)
+      return;
+    int active = 0;
+    for (int i = 0; i < STRIPES && active <= 1; i++)
+      active += m_active.get(i << STRIPE_SHIFT);
+    stats.m_samples++;
+    if (active > 1)
+      stats.m_concurrent++;
+  }
+
+  private void adapt(Mode mode) {
+    Stats stats = m_stats.get();
+    if (stats.m_mode != mode) {
+      // counted for another mode
+      stats.m_mode = mode;
+      stats.m_ops = stats.m_contended = stats.m_samples = stats.m_concurrent = 0;
+    }
+    if (++stats.m_ops < WINDOW)
+      return;
+
+    boolean switchMode;
+    if (mode.m_coarse)
+      switchMode = stats.m_contended > CONTENDED_HIGH * stats.m_ops;
+    else switchMode = stats.m_concurrent < CONCURRENT_LOW * stats.m_samples;
+    stats.m_ops = stats.m_contended = stats.m_samples = stats.m_concurrent = 0;
+    if (switchMode)
+      migrate(mode);
+  }
+
+  private void migrate(Mode from) {
+    if (!m_migrating.compareAndSet(false, true))
+      return;
+    try {
+      // someone else already switched
+      if (m_mode != from)
+        return;
+      for (int i = 0; i < STRIPES; i++) {
+        while (m_active.get(i << STRIPE_SHIFT) != 0)
+          Thread.yield();
+      }
+
+      // no operation is running, so the scan is the whole set
+      int[] values = from.m_set.range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+      IntSet set = from.m_coarse ? m_fine.get() : new IntSetLinkedList();
+      set.addAll(values, null);
+      m_mode = new Mode(set, !from.m_coarse);
+      m_migrations.getAndIncrement();
+    } finally {
+      m_migrating.set(false);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package cp.benchmark.intset;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One bit per key of a bounded range [0, range). add and remove are a single
+ * atomic OR / AND on the word holding the bit, so every operation is
+ * wait-free and the set takes range / 8 bytes whatever its size.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetBitset implements IntSet {
+
+  private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+  private final long[] m_words;
+  private final int m_range;
+  private final LongAdder m_size;
+
+  public IntSetBitset(int range) {
+    m_range = range;
+    m_words = new long[(range + 63) >>> 6];
+    m_size = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    checkValue(value);
+    long mask = 1L << value;
+    long word = (long) WORD.getAndBitwiseOr(m_words, value >>> 6, mask);
+    if ((word & mask) != 0)
+      return false;
+    m_size.increment();
+    return true;
+  }
+
+  public boolean remove(int value) {
+    checkValue(value);
+    long mask = 1L << value;
+    long word = (long) WORD.getAndBitwiseAnd(m_words, value >>> 6, ~mask);
+    if ((word & mask) == 0)
+      return false;
+    m_size.decrement();
+    return true;
+  }
+
+  public boolean contains(int value) {
+    if (value < 0 || value >= m_range)
+      return false;
+    long word = (long) WORD.getVolatile(m_words, value >>> 6);
+    return (word & (1L << value)) != 0;
+  }
+
+  public int size() {
+    return (int) m_size.sum();
+  }
+
+  public void validate() {
+    // bits past the end of the range must never be set
+    int tail = m_range & 63;
+    if (tail != 0) {
+      long word = m_words[m_words.length - 1];
+      assert (word >>> tail) == 0 : "set has values outside of [0, " + m_range + ")";
+    }
+    int totalSize = 0;
+    for (int i = 0; i < m_words.length; i++)
+      totalSize += Long.bitCount(m_words[i]);
+    assert m_size.sum() == totalSize : "set has a total size of " + totalSize + " but it should be " + m_size.sum();
+  }
+
+  private void checkValue(int value) {
+    if (value < 0 || value >= m_range)
+      throw new IllegalArgumentException("value out of range: " + value);
+  }
+}
@@ -0,0 +1,209 @@
+package cp.benchmark.intset;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Copy-on-write set: the values are an immutable sorted int[] published
+ * through a volatile reference, so readers take no lock and answer with a
+ * binary search over a snapshot.
+ *
+ * Writers do not copy the array one update at a time. They push their
+ * requests onto a pending stack, and whichever writer holds the writer lock
+ * drains the whole stack, merges every request into the current array in a
+ * single pass and publishes the result, RCU style. A request takes effect
+ * when the array that holds it is published.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetCopyOnWrite implements IntSet {
+
+  static final int SPIN_LIMIT = 64;
+
+  public class Request {
+    private final boolean m_add;
+    private final int[] m_values;
+    private final boolean[] m_results;
+    private int m_count;
+    private volatile boolean m_done;
+    private Request m_next;
+
+    public Request(boolean add, int[] values, boolean[] results) {
+      m_add = add;
+      m_values = values;
+      m_results = results;
+    }
+  }
+
+  private volatile int[] m_values;
+  private final AtomicReference<Request> m_pending;
+  private final ReentrantLock m_lock;
+  private int totalAdds;
+  private int totalRemoves;
+
+  public IntSetCopyOnWrite() {
+    m_values = new int[0];
+    m_pending = new AtomicReference<Request>(null);
+    m_lock = new ReentrantLock();
+    totalAdds = 0;
+    totalRemoves = 0;
+  }
+
+  public boolean add(int value) {
+    boolean[] result = new boolean[1];
+    apply(new Request(true, new int[] { value }, result));
+    return result[0];
+  }
+
+  public boolean remove(int value) {
+    boolean[] result = new boolean[1];
+    apply(new Request(false, new int[] { value }, result));
+    return result[0];
+  }
+
+  public boolean contains(int value) {
+    return Arrays.binarySearch(m_values, value) >= 0;
+  }
+
+  public int[] range(int lo, int hi) {
+    int[] values = m_values;
+    if (lo >= hi)
+      return new int[0];
+    return Arrays.copyOfRange(values, lowerBound(values, 0, lo), lowerBound(values, 0, hi));
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    return apply(new Request(true, values, results != null ? results : new boolean[values.length]));
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    return apply(new Request(false, values, results != null ? results : new boolean[values.length]));
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    int[] snapshot = m_values;
+    int count = 0;
+    int from = 0;
+    for (int i = 0; i < values.length; i++) {
+      // the values are increasing, so the search can resume where it ended
+      from = lowerBound(snapshot, from, values[i]);
+      boolean result = from < snapshot.length && snapshot[from] == values[i];
+      if (result) count++;
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
+  // the array is replaced as a whole, so its length is the size at one point in time
+  public int size() {
+    return m_values.length;
+  }
+
+  public void validate() {
+    int[] values = m_values;
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    for (int i = 0; i < values.length; i++) {
+      assert i == 0 || values[i - 1] < values[i] : "array is unordered: " + values[i - 1] + " before " + values[i];
+      assert !checker.contains(values[i]) : "array has duplicates: " + values[i];
+      checker.add(values[i]);
+    }
+    assert m_pending.get() == null : "requests are still pending";
+    assert (totalAdds - totalRemoves) == values.length : "array has a total size of " + values.length + " but it should be " + (totalAdds - totalRemoves);
+  }
+
+  private int apply(Request request) {
+    Request head;
+    do {
+      head = m_pending.get();
+      request.m_next = head;
+    } while (!m_pending.compareAndSet(head, request));
+
+    int spins = 0;
+    while (!request.m_done) {
+      if (!m_lock.isLocked() && m_lock.tryLock()) {
+        try {
+          combine();
+        } finally {
+          m_lock.unlock();
+        }
+      } else if (++spins < SPIN_LIMIT) Thread.onSpinWait();
+      else Thread.yield();
+    }
+    return request.m_count;
+  }
+
+  private void combine() {
+    Request requests = m_pending.getAndSet(null);
+    if (requests == null)
+      return;
+
+    // back to arrival order, and count the updates
+    Request reversed = null;
+    int size = 0;
+    while (requests != null) {
+      Request next = requests.m_next;
+      requests.m_next = reversed;
+      reversed = requests;
+      size += requests.m_values.length;
+      requests = next;
+    }
+
+    // sort by value, keeping the arrival order of updates on the same value
+    Request[] owners = new Request[size];
+    int[] positions = new int[size];
+    long[] keys = new long[size];
+    int n = 0;
+    for (Request r = reversed; r != null; r = r.m_next) {
+      for (int i = 0; i < r.m_values.length; i++) {
+        owners[n] = r;
+        positions[n] = i;
+        keys[n] = (((r.m_values[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL) << 32) | n;
+        n++;
+      }
+    }
+    Arrays.sort(keys);
+
+    // merge the old array with the sorted updates in one pass
+    int[] values = m_values;
+    int[] merged = new int[values.length + size];
+    int length = 0;
+    int i = 0;
+    int k = 0;
+    while (k < size) {
+      Request first = owners[(int) keys[k]];
+      int value = first.m_values[positions[(int) keys[k]]];
+      while (i < values.length && values[i] < value)
+        merged[length++] = values[i++];
+      boolean present = i < values.length && values[i] == value;
+      if (present) i++;
+      for (; k < size && owners[(int) keys[k]].m_values[positions[(int) keys[k]]] == value; k++) {
+        Request r = owners[(int) keys[k]];
+        boolean result = r.m_add != present;
+        if (result) {
+          present = r.m_add;
+          r.m_count++;
+          if (r.m_add) totalAdds++;
+          else totalRemoves++;
+        }
+        r.m_results[positions[(int) keys[k]]] = result;
+      }
+      if (present)
+        merged[length++] = value;
+    }
+    while (i < values.length)
+      merged[length++] = values[i++];
+
+    m_values = length == merged.length ? merged : Arrays.copyOf(merged, length);
+    for (Request r = reversed; r != null; r = r.m_next)
+      r.m_done = true;
+  }
+
+  // index of the first value that is not smaller than value
+  private static int lowerBound(int[] values, int from, int value) {
+    int index = Arrays.binarySearch(values, from, values.length, value);
+    return index >= 0 ? index : -index - 1;
+  }
+}
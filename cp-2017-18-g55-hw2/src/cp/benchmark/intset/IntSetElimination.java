@@ -0,0 +1,180 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Elimination front end for any set. An add(k) and a remove(k) that meet in
+ * the elimination array cancel out without touching the set, both returning
+ * true, as if the add had run right before the remove.
+ *
+ * That is only linearizable if k was absent at some point while both
+ * operations were running, so the thread that claims an offer checks
+ * contains(k) on the set while the offering thread is still waiting. If k is
+ * there, the offer is rejected and both go to the set as usual.
+ *
+ * Operations only try to collide when another operation on a key of the same
+ * stripe is already in flight on the set, which is when collisions can occur
+ * and when the set is contended anyway.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetElimination implements IntSet {
+
+  static final int SLOTS = 64;
+  static final int STRIPES = 64;
+  // one counter per cache line
+  static final int STRIPE_SHIFT = 4;
+  static final int WAIT_SPINS = 256;
+  static final int SPIN_LIMIT = 64;
+
+  static final int WAITING = 0;
+  static final int CLAIMED = 1;
+  static final int ELIMINATED = 2;
+  static final int REJECTED = 3;
+  static final int WITHDRAWN = 4;
+
+  public class Offer {
+    private final int m_value;
+    private final boolean m_add;
+    private final AtomicInteger m_state;
+
+    public Offer(int value, boolean add) {
+      m_value = value;
+      m_add = add;
+      m_state = new AtomicInteger(WAITING);
+    }
+
+    public boolean matches(int value, boolean add) {
+      return m_value == value && m_add != add;
+    }
+  }
+
+  private final IntSet m_set;
+  private final AtomicReferenceArray<Offer> m_slots;
+  private final AtomicIntegerArray m_active;
+  private final LongAdder m_eliminated;
+
+  public IntSetElimination(IntSet set) {
+    m_set = set;
+    m_slots = new AtomicReferenceArray<Offer>(SLOTS);
+    m_active = new AtomicIntegerArray(STRIPES << STRIPE_SHIFT);
+    m_eliminated = new LongAdder();
+  }
+
+  public IntSet getSet() {
+    return m_set;
+  }
+
+  public long getEliminated() {
+    return m_eliminated.sum();
+  }
+
+  public boolean add(int value) {
+    int stripe = stripeOf(value);
+    int busy = m_active.getAndIncrement(stripe);
+    try {
+      if (busy > 0 && eliminate(value, true))
+        return true;
+      return m_set.add(value);
+    } finally {
+      m_active.getAndDecrement(stripe);
+    }
+  }
+
+  public boolean remove(int value) {
+    int stripe = stripeOf(value);
+    int busy = m_active.getAndIncrement(stripe);
+    try {
+      if (busy > 0 && eliminate(value, false))
+        return true;
+      return m_set.remove(value);
+    } finally {
+      m_active.getAndDecrement(stripe);
+    }
+  }
+
+  public boolean contains(int value) {
+    return m_set.contains(value);
+  }
+
+  public int[] range(int lo, int hi) {
+    return m_set.range(lo, hi);
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    return m_set.addAll(values, results);
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    return m_set.removeAll(values, results);
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    return m_set.containsAll(values, results);
+  }
+
+  // an eliminated pair leaves the size unchanged
+  public int size() {
+    return m_set.size();
+  }
+
+  public void validate() {
+    for (int i = 0; i < SLOTS; i++)
+      assert m_slots.get(i) == null : "slot " + i + " still holds an offer";
+    for (int i = 0; i < STRIPES; i++)
+      assert m_active.get(i << STRIPE_SHIFT) == 0 : "stripe " + i + " still has operations in flight";
+    m_set.validate();
+  }
+
+  /*
+   * Returns true if the operation was eliminated, and false if it still has
+   * to be applied to the set.
+   */
+  private boolean eliminate(int value, boolean add) {
+    int index = (hash(value) >>> 16) & (SLOTS - 1);
+    Offer offer = m_slots.get(index);
+
+    if (offer != null) {
+      if (!offer.matches(value, add) || !offer.m_state.compareAndSet(WAITING, CLAIMED))
+        return false;
+      // the offering thread waits for our verdict, so both operations are
+      // running when contains() takes effect
+      boolean absent = !m_set.contains(value);
+      offer.m_state.set(absent ? ELIMINATED : REJECTED);
+      if (absent)
+        m_eliminated.increment();
+      return absent;
+    }
+
+    offer = new Offer(value, add);
+    if (!m_slots.compareAndSet(index, null, offer))
+      return false;
+    for (int spins = 0; spins < WAIT_SPINS && offer.m_state.get() == WAITING; spins++)
+      pause(spins);
+    if (!offer.m_state.compareAndSet(WAITING, WITHDRAWN)) {
+      // claimed: wait for the verdict
+      for (int spins = 0; offer.m_state.get() == CLAIMED; spins++)
+        pause(spins);
+    }
+    m_slots.compareAndSet(index, offer, null);
+    return offer.m_state.get() == ELIMINATED;
+  }
+
+  private int stripeOf(int value) {
+    return ((hash(value) >>> 16) & (STRIPES - 1)) << STRIPE_SHIFT;
+  }
+
+  private static int hash(int value) {
+    return value * 0x9E3779B9;
+  }
+
+  private static void pause(int spins) {
+    if (spins < SPIN_LIMIT) Thread.onSpinWait();
+    else Thread.yield();
+  }
+}
@@ -0,0 +1,232 @@
+package cp.benchmark.intset;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Flat combining (Hendler, Incze, Shavit &amp; Tzafrir) around a sequential
+ * set. Each thread publishes its operation in its own slot and spins on it.
+ * Whichever thread gets the combiner lock collects all pending requests,
+ * sorts them by value and applies each kind with one call to the bulk
+ * operations of the wrapped set, so a whole round costs a few sorted passes
+ * over it instead of one lock handoff per operation.
+ *
+ * The wrapped set is only ever accessed under the combiner lock, so any
+ * sequential IntSet will do.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetFlatCombining implements IntSet {
+
+  static final int NONE = 0;
+  static final int ADD = 1;
+  static final int REMOVE = 2;
+  static final int CONTAINS = 3;
+  static final long INDEX_MASK = (1L << 29) - 1;
+  static final int SPIN_LIMIT = 64;
+
+  public class Slot {
+    // written by the owner before m_op, read by the combiner after it
+    private int m_value;
+    private boolean m_result;
+    private volatile int m_op;
+    private Slot m_link;
+  }
+
+  private final IntSet m_set;
+  private final ReentrantLock m_lock;
+  private final AtomicReference<Slot> m_slots;
+  private final ThreadLocal<Slot> m_slot;
+  private Slot[] m_pending;
+  private long[] m_keys;
+  private int[] m_values;
+  private boolean[] m_results;
+
+  public IntSetFlatCombining(IntSet set) {
+    m_set = set;
+    m_lock = new ReentrantLock();
+    m_slots = new AtomicReference<Slot>(null);
+    m_slot = ThreadLocal.withInitial(this::register);
+    m_pending = new Slot[16];
+    m_keys = new long[16];
+    m_values = new int[16];
+    m_results = new boolean[16];
+  }
+
+  public IntSet getSet() {
+    return m_set;
+  }
+
+  public boolean add(int value) {
+    return apply(ADD, value);
+  }
+
+  public boolean remove(int value) {
+    return apply(REMOVE, value);
+  }
+
+  public boolean contains(int value) {
+    return apply(CONTAINS, value);
+  }
+
+  // scans and batches are already one pass, so they just take the lock
+  public int[] range(int lo, int hi) {
+    m_lock.lock();
+    try {
+      return m_set.range(lo, hi);
+    } finally {
+      m_lock.unlock();
+    }
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    m_lock.lock();
+    try {
+      return m_set.addAll(values, results);
+    } finally {
+      m_lock.unlock();
+    }
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    m_lock.lock();
+    try {
+      return m_set.removeAll(values, results);
+    } finally {
+      m_lock.unlock();
+    }
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    m_lock.lock();
+    try {
+      return m_set.containsAll(values, results);
+    } finally {
+      m_lock.unlock();
+    }
+  }
+
+  public int size() {
+    m_lock.lock();
+    try {
+      return m_set.size();
+    } finally {
+      m_lock.unlock();
+    }
+  }
+
+  public void validate() {
+    for (Slot slot = m_slots.get(); slot != null; slot = slot.m_link)
+      assert slot.m_op == NONE : "request " + slot.m_op + " on " + slot.m_value + " was never applied";
+    m_set.validate();
+  }
+
+  private boolean apply(int op, int value) {
+    Slot slot = m_slot.get();
+    slot.m_value = value;
+    slot.m_op = op;
+
+    int spins = 0;
+    while (slot.m_op != NONE) {
+      if (!m_lock.isLocked() && m_lock.tryLock()) {
+        try {
+          combine();
+        } finally {
+          m_lock.unlock();
+        }
+      } else if (++spins < SPIN_LIMIT) Thread.onSpinWait();
+      // the combiner may need our core
+      else Thread.yield();
+    }
+    return slot.m_result;
+  }
+
+  private void combine() {
+    int size = 0;
+    for (Slot slot = m_slots.get(); slot != null; slot = slot.m_link) {
+      if (slot.m_op != NONE) {
+        if (size == m_pending.length) {
+          m_pending = Arrays.copyOf(m_pending, size << 1);
+          m_keys = Arrays.copyOf(m_keys, size << 1);
+          m_values = Arrays.copyOf(m_values, size << 1);
+          m_results = Arrays.copyOf(m_results, size << 1);
+        }
+        m_pending[size++] = slot;
+      }
+    }
+
+    if (size == 1) {
+      // nobody to combine with
+      Slot slot = m_pending[0];
+      int value = slot.m_value;
+      switch (slot.m_op) {
+        case ADD: slot.m_result = m_set.add(value); break;
+        case REMOVE: slot.m_result = m_set.remove(value); break;
+        default: slot.m_result = m_set.contains(value); break;
+      }
+      slot.m_op = NONE;
+      m_pending[0] = null;
+      return;
+    }
+
+    // sort by op, then by value, with the slot index in the low bits
+    for (int i = 0; i < size; i++) {
+      Slot slot = m_pending[i];
+      long value = (slot.m_value ^ Integer.MIN_VALUE) & 0xFFFFFFFFL;
+      m_keys[i] = ((long) slot.m_op << 61) | (value << 29) | i;
+    }
+    Arrays.sort(m_keys, 0, size);
+
+    // all requests of a round are concurrent, so applying the adds, then the
+    // removes, then the lookups is a valid linearization
+    int start = 0;
+    while (start < size) {
+      int op = (int) (m_keys[start] >>> 61);
+      int end = start;
+      int count = 0;
+      while (end < size && (int) (m_keys[end] >>> 61) == op) {
+        int value = m_pending[(int) (m_keys[end] & INDEX_MASK)].m_value;
+        if (count == 0 || m_values[count - 1] != value)
+          m_values[count++] = value;
+        end++;
+      }
+
+      int[] values = count == m_values.length ? m_values : Arrays.copyOf(m_values, count);
+      switch (op) {
+        case ADD: m_set.addAll(values, m_results); break;
+        case REMOVE: m_set.removeAll(values, m_results); break;
+        default: m_set.containsAll(values, m_results); break;
+      }
+
+      // a duplicate add or remove comes after the first one and fails
+      int k = -1;
+      int previous = 0;
+      for (int i = start; i < end; i++) {
+        Slot slot = m_pending[(int) (m_keys[i] & INDEX_MASK)];
+        boolean first = k < 0 || slot.m_value != previous;
+        if (first) k++;
+        slot.m_result = (first || op == CONTAINS) && m_results[k];
+        previous = slot.m_value;
+      }
+      start = end;
+    }
+
+    for (int i = 0; i < size; i++) {
+      m_pending[i].m_op = NONE;
+      m_pending[i] = null;
+    }
+  }
+
+  private Slot register() {
+    Slot slot = new Slot();
+    Slot head;
+    do {
+      head = m_slots.get();
+      slot.m_link = head;
+    } while (!m_slots.compareAndSet(head, slot));
+    return slot;
+  }
+}
@@ -34,6 +34,7 @@ public class IntSetLinkedList implements IntSet {
   }
 
   private final Node m_first;
+  private int m_size;
 
   public IntSetLinkedList() {
     Node min = new Node(Integer.MIN_VALUE);
@@ -55,6 +56,7 @@ public class IntSetLinkedList implements IntSet {
     result = v != value;
     if (result) {
       previous.setNext(new Node(value, next));
+      m_size++;
     }
 
     return result;
@@ -73,6 +75,7 @@ public class IntSetLinkedList implements IntSet {
     result = v == value;
     if (result) {
       previous.setNext(next.getNext());
+      m_size--;
     }
 
     return result;
@@ -92,8 +95,90 @@ public class IntSetLinkedList implements IntSet {
 
     return result;
   }
+  public int[] range(int lo, int hi) {
+    int[] values = new int[16];
+    int size = 0;
+    Node next = m_first.getNext();
+    int v;
+    while ((v = next.getValue()) < hi) {
+      if (v >= lo) {
+        if (size == values.length) values = java.util.Arrays.copyOf(values, size << 1);
+        values[size++] = v;
+      }
+      next = next.getNext();
+    }
+    return java.util.Arrays.copyOf(values, size);
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node previous = m_first;
+    Node next = previous.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value) {
+        previous = next;
+        next = previous.getNext();
+      }
+      boolean result = v != value;
+      if (result) {
+        // the next value can only go after the new node
+        Node node = new Node(value, next);
+        previous.setNext(node);
+        previous = node;
+        m_size++;
+        count++;
+      }
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node previous = m_first;
+    Node next = previous.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value) {
+        previous = next;
+        next = previous.getNext();
+      }
+      boolean result = v == value;
+      if (result) {
+        next = next.getNext();
+        previous.setNext(next);
+        m_size--;
+        count++;
+      }
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node next = m_first.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value)
+        next = next.getNext();
+      boolean result = v == value;
+      if (result) count++;
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
   
   
+  public int size() {
+    return m_size;
+  }
+
   public int getFinalSize() {
 	  int totalSize=2;
 	  Node node = m_first.getNext();
@@ -120,5 +205,6 @@ public class IntSetLinkedList implements IntSet {
       node = node.getNext();
       value = node.getValue();
     }
+    assert m_size == checker.size() : "list has a total size of " + checker.size() + " but it should be " + m_size;
   }
 }
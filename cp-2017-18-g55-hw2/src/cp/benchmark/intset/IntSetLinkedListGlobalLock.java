@@ -1,8 +1,5 @@
 package cp.benchmark.intset;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
 /**
  * @author Pascal Felber
  * @author Tiago Vale
@@ -37,16 +34,20 @@ public class IntSetLinkedListGlobalLock implements IntSet {
   }
 
   private final Node m_first;
-  private Lock lock;
+  private NodeLock lock;
   private int totalAdds;
   private int totalRemoves;
 
   public IntSetLinkedListGlobalLock() {
+    this(new NodeLock.Reentrant());
+  }
+
+  public IntSetLinkedListGlobalLock(NodeLock globalLock) {
     Node min = new Node(Integer.MIN_VALUE);
     Node max = new Node(Integer.MAX_VALUE);
     min.setNext(max);
     m_first = min;
-    lock= new ReentrantLock();
+    lock= globalLock;
     totalAdds=0;
     totalRemoves=0;
   }
@@ -118,6 +119,113 @@ public class IntSetLinkedListGlobalLock implements IntSet {
 	}
   }
 
+  public int[] range(int lo, int hi) {
+    lock.lock();
+    try {
+      int[] values = new int[16];
+      int size = 0;
+      Node next = m_first.getNext();
+      int v;
+      while ((v = next.getValue()) < hi) {
+        if (v >= lo) {
+          if (size == values.length) values = java.util.Arrays.copyOf(values, size << 1);
+          values[size++] = v;
+        }
+        next = next.getNext();
+      }
+      return java.util.Arrays.copyOf(values, size);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    lock.lock();
+    try {
+      int count = 0;
+      Node previous = m_first;
+      Node next = previous.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value) {
+          previous = next;
+          next = previous.getNext();
+        }
+        boolean result = v != value;
+        if (result) {
+          // the next value can only go after the new node
+          Node node = new Node(value, next);
+          previous.setNext(node);
+          previous = node;
+          totalAdds++;
+          count++;
+        }
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    lock.lock();
+    try {
+      int count = 0;
+      Node previous = m_first;
+      Node next = previous.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value) {
+          previous = next;
+          next = previous.getNext();
+        }
+        boolean result = v == value;
+        if (result) {
+          next = next.getNext();
+          previous.setNext(next);
+          totalRemoves++;
+          count++;
+        }
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    lock.lock();
+    try {
+      int count = 0;
+      Node next = m_first.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value)
+          next = next.getNext();
+        boolean result = v == value;
+        if (result) count++;
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return totalAdds - totalRemoves;
+    } finally {
+      lock.unlock();
+    }
+  }
+
   public void validate() {
 	  int totalSize=2;
 	  int initialSize=2;
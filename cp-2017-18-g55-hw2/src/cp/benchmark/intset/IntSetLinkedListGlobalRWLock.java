@@ -120,6 +120,113 @@ public class IntSetLinkedListGlobalRWLock implements IntSet {
   
   
   
+  public int[] range(int lo, int hi) {
+    lock.readLock().lock();
+    try {
+      int[] values = new int[16];
+      int size = 0;
+      Node next = m_first.getNext();
+      int v;
+      while ((v = next.getValue()) < hi) {
+        if (v >= lo) {
+          if (size == values.length) values = java.util.Arrays.copyOf(values, size << 1);
+          values[size++] = v;
+        }
+        next = next.getNext();
+      }
+      return java.util.Arrays.copyOf(values, size);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    lock.writeLock().lock();
+    try {
+      int count = 0;
+      Node previous = m_first;
+      Node next = previous.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value) {
+          previous = next;
+          next = previous.getNext();
+        }
+        boolean result = v != value;
+        if (result) {
+          // the next value can only go after the new node
+          Node node = new Node(value, next);
+          previous.setNext(node);
+          previous = node;
+          totalAdds++;
+          count++;
+        }
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    lock.writeLock().lock();
+    try {
+      int count = 0;
+      Node previous = m_first;
+      Node next = previous.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value) {
+          previous = next;
+          next = previous.getNext();
+        }
+        boolean result = v == value;
+        if (result) {
+          next = next.getNext();
+          previous.setNext(next);
+          totalRemoves++;
+          count++;
+        }
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    lock.readLock().lock();
+    try {
+      int count = 0;
+      Node next = m_first.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value)
+          next = next.getNext();
+        boolean result = v == value;
+        if (result) count++;
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return totalAdds - totalRemoves;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   public void validate() {
 	int totalSize=2;
 	int initialSize=2;
@@ -0,0 +1,286 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Global lock list on a StampedLock. Updates take the write lock, but readers
+ * first traverse without any lock under an optimistic stamp and only take the
+ * read lock if a writer got in before the stamp is validated. An optimistic
+ * reader does not write to the lock, so read-mostly workloads keep scaling.
+ *
+ * Since optimistic readers can run alongside a writer, the next fields are
+ * volatile and a new node is fully built before it is linked. A reader may see
+ * a removed node, but its next field still leads to larger values, so the
+ * traversal always ends at the tail and validate() rejects the result.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetLinkedListGlobalStampedLock implements IntSet {
+
+  public class Node {
+    private final int m_value;
+    private volatile Node m_next;
+
+    public Node(int value, Node next) {
+      m_value = value;
+      m_next = next;
+    }
+
+    public Node(int value) {
+      this(value, null);
+    }
+
+    public int getValue() {
+      return m_value;
+    }
+
+    public void setNext(Node next) {
+      m_next = next;
+    }
+
+    public Node getNext() {
+      return m_next;
+    }
+  }
+
+  private final Node m_first;
+  private final StampedLock lock;
+  private int totalAdds;
+  private int totalRemoves;
+
+  public IntSetLinkedListGlobalStampedLock() {
+    Node min = new Node(Integer.MIN_VALUE);
+    Node max = new Node(Integer.MAX_VALUE);
+    min.setNext(max);
+    m_first = min;
+    lock = new StampedLock();
+    totalAdds = 0;
+    totalRemoves = 0;
+  }
+
+  public boolean add(int value) {
+    long stamp = lock.writeLock();
+    try {
+      Node previous = m_first;
+      Node next = previous.getNext();
+      int v;
+      while ((v = next.getValue()) < value) {
+        previous = next;
+        next = previous.getNext();
+      }
+      boolean result = v != value;
+      if (result) {
+        previous.setNext(new Node(value, next));
+        totalAdds++;
+      }
+      return result;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public boolean remove(int value) {
+    long stamp = lock.writeLock();
+    try {
+      Node previous = m_first;
+      Node next = previous.getNext();
+      int v;
+      while ((v = next.getValue()) < value) {
+        previous = next;
+        next = previous.getNext();
+      }
+      boolean result = v == value;
+      if (result) {
+        previous.setNext(next.getNext());
+        totalRemoves++;
+      }
+      return result;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public boolean contains(int value) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      boolean result = find(value);
+      if (lock.validate(stamp))
+        return result;
+    }
+
+    // a writer got in: retry under the read lock
+    stamp = lock.readLock();
+    try {
+      return find(value);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public int[] range(int lo, int hi) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      int[] values = collect(lo, hi);
+      if (lock.validate(stamp))
+        return values;
+    }
+
+    stamp = lock.readLock();
+    try {
+      return collect(lo, hi);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+    long stamp = lock.writeLock();
+    try {
+      int count = 0;
+      Node previous = m_first;
+      Node next = previous.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value) {
+          previous = next;
+          next = previous.getNext();
+        }
+        boolean result = v != value;
+        if (result) {
+          // the next value can only go after the new node
+          Node node = new Node(value, next);
+          previous.setNext(node);
+          previous = node;
+          totalAdds++;
+          count++;
+        }
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+    long stamp = lock.writeLock();
+    try {
+      int count = 0;
+      Node previous = m_first;
+      Node next = previous.getNext();
+      for (int i = 0; i < values.length; i++) {
+        int value = values[i];
+        int v;
+        while ((v = next.getValue()) < value) {
+          previous = next;
+          next = previous.getNext();
+        }
+        boolean result = v == value;
+        if (result) {
+          next = next.getNext();
+          previous.setNext(next);
+          totalRemoves++;
+          count++;
+        }
+        if (results != null) results[i] = result;
+      }
+      return count;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      // results are only written back once the stamp is validated
+      boolean[] found = new boolean[values.length];
+      int count = findAll(values, found);
+      if (lock.validate(stamp)) {
+        if (results != null) System.arraycopy(found, 0, results, 0, values.length);
+        return count;
+      }
+    }
+
+    stamp = lock.readLock();
+    try {
+      return findAll(values, results);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public int size() {
+    long stamp = lock.tryOptimisticRead();
+    int size = totalAdds - totalRemoves;
+    if (stamp != 0 && lock.validate(stamp))
+      return size;
+
+    stamp = lock.readLock();
+    try {
+      return totalAdds - totalRemoves;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  public void validate() {
+    int totalSize = 2;
+    int initialSize = 2;
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int previous_value = m_first.getValue();
+    Node node = m_first.getNext();
+    int value = node.getValue();
+    while (value < Integer.MAX_VALUE) {
+      assert previous_value < value : "list is unordered: " + previous_value + " before " + value;
+      assert !checker.contains(value) : "list has duplicates: " + value;
+      checker.add(value);
+      previous_value = value;
+      node = node.getNext();
+      value = node.getValue();
+      totalSize++;
+    }
+    assert (initialSize + totalAdds - totalRemoves) == totalSize : "list has a total size of " + totalSize + " but it should be " + (initialSize + totalAdds - totalRemoves);
+  }
+
+  private boolean find(int value) {
+    Node next = m_first.getNext();
+    int v;
+    while ((v = next.getValue()) < value)
+      next = next.getNext();
+    return v == value;
+  }
+
+  private int[] collect(int lo, int hi) {
+    int[] values = new int[16];
+    int size = 0;
+    Node next = m_first.getNext();
+    int v;
+    while ((v = next.getValue()) < hi) {
+      if (v >= lo) {
+        if (size == values.length) values = java.util.Arrays.copyOf(values, size << 1);
+        values[size++] = v;
+      }
+      next = next.getNext();
+    }
+    return java.util.Arrays.copyOf(values, size);
+  }
+
+  private int findAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node next = m_first.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value)
+        next = next.getNext();
+      boolean result = v == value;
+      if (result) count++;
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+}
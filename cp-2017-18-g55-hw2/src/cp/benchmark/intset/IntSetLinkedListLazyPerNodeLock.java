@@ -1,6 +1,8 @@
 package cp.benchmark.intset;
 
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * @author Pascal Felber
@@ -13,7 +15,7 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
     private final int m_value;
     private Node m_next;
     private boolean marked;
-    private ReentrantLock lock;
+    private NodeLock lock;
     private int add;
     private int remove;
 
@@ -21,7 +23,7 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
       m_value = value;
       m_next = next;
       marked = false;
-      lock = new ReentrantLock();
+      lock = m_locks.get();
       add=0;
       remove=0;
     }
@@ -83,18 +85,42 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
     }
   }
 
+  /*
+   * Per-thread hint to the last node visited before the key of an
+   * operation, so that the next one on a nearby key does not walk again
+   * from m_first.
+   */
+  public class Finger {
+    private Node node;
+  }
+
   private final Node m_first;
+  private final LongAdder m_size;
+  private final Supplier<NodeLock> m_locks;
+  private volatile SnapCollector m_collector;
+  private final ReentrantLock m_scanLock;
+  private final ThreadLocal<Finger> m_finger;
 
   public IntSetLinkedListLazyPerNodeLock() {
+    this(NodeLock.Reentrant::new);
+  }
+
+  public IntSetLinkedListLazyPerNodeLock(Supplier<NodeLock> locks) {
+    m_locks = locks;
     Node min = new Node(Integer.MIN_VALUE);
     Node max = new Node(Integer.MAX_VALUE);
     min.setNext(max);
     m_first = min;
+    m_size = new LongAdder();
+    m_collector = null;
+    m_scanLock = new ReentrantLock();
+    m_finger = ThreadLocal.withInitial(Finger::new);
   }
 
   public boolean add(int value) {
+	Finger finger = m_finger.get();
 	while(true) {
-		Node previous = m_first;
+		Node previous = start(finger, value);
 	    Node next = previous.getNext();
 	    int v;
 	    
@@ -102,20 +128,27 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
 	      previous = next;
 	      next = previous.getNext();
 	    }
+	    finger.node = previous;
 	    
 	    previous.lockNode();
 	    try {
 	    	next.lockNode();
 	    	try {
 	    		if(validateLogic(previous, next)) {
-	    			if(value==v)
+	    			if(value==v) {
+	    				report(next, true);
 	    				return false;
-	    			else {
-	    				previous.setNext(new Node(value, next));
+	    			} else {
+	    				Node node = new Node(value, next);
+	    				previous.setNext(node);
 	    				previous.incAdd();
+	    				m_size.increment();
+	    				report(node, true);
 	    				return true;
 	    			}
 	    		}
+	    		//o dedo pode ja nao estar na lista
+	    		finger.node = null;
 	    	} finally {
 	    		next.unlockNode();
 	    	}	
@@ -126,8 +159,9 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
   }
 
   public boolean remove(int value) {
+	Finger finger = m_finger.get();
 	while(true) {
-		Node previous = m_first;
+		Node previous = start(finger, value);
 	    Node next = previous.getNext();
 	    int v;
 	    
@@ -135,6 +169,7 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
 	      previous = next;
 	      next = previous.getNext();
 	    }
+	    finger.node = previous;
 	    
 	    previous.lockNode();
 	    try {
@@ -143,13 +178,17 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
 	    		if(validateLogic(previous, next)) {
 	    			if(value==v) {
 	    				next.markNode();
+	    				report(next, false);
 	    				previous.incAmountAdd(next.getAdd());
 	    				previous.incAmountRemove(next.getRemove());
 	    				previous.setNext(next.getNext());
 	    				previous.incRemove();
+	    				m_size.decrement();
 	    				return true;
 	    			} else return false;
 	    		}
+	    		//o dedo pode ja nao estar na lista
+	    		finger.node = null;
 	    	} finally {
 	    		next.unlockNode();
 	    	}	
@@ -160,12 +199,161 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
   }
 
   public boolean contains(int value) {
-	Node next = m_first;
+	Finger finger = m_finger.get();
+	Node previous = start(finger, value);
+	Node next = previous.getNext();
 	
-	while (next.getValue() < value)
+	while (next.getValue() < value) {
+		previous = next;
 		next = next.getNext();
+	}
+	finger.node = previous;
 	
-	return (next.getValue()==value && !next.isMarked());
+	if(next.getValue() != value)
+		return false;
+	boolean result = !next.isMarked();
+	report(next, result);
+	return result;
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			Node previous = start;
+			Node next = previous.getNext();
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous = next;
+				next = previous.getNext();
+			}
+			
+			previous.lockNode();
+			try {
+				next.lockNode();
+				try {
+					if(validateLogic(previous, next)) {
+						boolean result = value != v;
+						if(result) {
+							Node node = new Node(value, next);
+							previous.setNext(node);
+							previous.incAdd();
+							m_size.increment();
+							report(node, true);
+							start = node;
+							count++;
+						} else {
+							report(next, true);
+							start = previous;
+						}
+						if (results != null) results[i] = result;
+						break;
+					}
+					//a janela anterior pode ja nao estar na lista
+					start = m_first;
+				} finally {
+					next.unlockNode();
+				}
+			} finally {
+				previous.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			Node previous = start;
+			Node next = previous.getNext();
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous = next;
+				next = previous.getNext();
+			}
+			
+			previous.lockNode();
+			try {
+				next.lockNode();
+				try {
+					if(validateLogic(previous, next)) {
+						boolean result = value == v;
+						if(result) {
+							next.markNode();
+							report(next, false);
+							previous.incAmountAdd(next.getAdd());
+							previous.incAmountRemove(next.getRemove());
+							previous.setNext(next.getNext());
+							previous.incRemove();
+							m_size.decrement();
+							count++;
+						}
+						start = previous;
+						if (results != null) results[i] = result;
+						break;
+					}
+					//a janela anterior pode ja nao estar na lista
+					start = m_first;
+				} finally {
+					next.unlockNode();
+				}
+			} finally {
+				previous.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node next = m_first;
+	
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while (next.getValue() < value)
+			next = next.getNext();
+		
+		boolean result = next.getValue()==value && !next.isMarked();
+		if(next.getValue()==value) report(next, result);
+		if(result) count++;
+		if (results != null) results[i] = result;
+	}
+	return count;
+  }
+
+  public int[] range(int lo, int hi) {
+	m_scanLock.lock();
+	try {
+		SnapCollector collector = new SnapCollector();
+		m_collector = collector;
+		
+		Node node = m_first.getNext();
+		int value;
+		while((value = node.getValue()) < hi) {
+			if(value >= lo && !node.isMarked())
+				collector.addNode(node, value);
+			node = node.getNext();
+		}
+		
+		int[] result = collector.finish(lo, hi);
+		m_collector = null;
+		return result;
+	} finally {
+		m_scanLock.unlock();
+	}
+  }
+
+  public int size() {
+    return (int) m_size.sum();
   }
 
   public void validate() {
@@ -199,6 +387,27 @@ public class IntSetLinkedListLazyPerNodeLock implements IntSet {
     assert (initialSize + totalAdds - totalRemoves) == totalSize : "list has a total size of " +totalSize+" but it should be "+ (initialSize + totalAdds - totalRemoves);
   }
   
+  /*
+   * Reports a node seen as inserted or removed to the scan in progress, if
+   * any, so that the scan can account for updates behind its traversal.
+   */
+  private void report(Node node, boolean inserted) {
+	SnapCollector collector = m_collector;
+	if(collector != null && collector.isActive())
+		collector.report(node, node.getValue(), inserted);
+  }
+
+  /*
+   * The finger is only a safe starting point while it is unmarked: a
+   * removed node may point past nodes inserted after its removal.
+   */
+  private Node start(Finger finger, int value) {
+	Node node = finger.node;
+	if(node != null && node.getValue() < value && !node.isMarked())
+		return node;
+	return m_first;
+  }
+
   private boolean validateLogic(Node previous, Node next) {
 	  return (!previous.isMarked() && !next.isMarked() && previous.getNext() == next);
   }
@@ -1,7 +1,8 @@
 package cp.benchmark.intset;
 
 import java.util.concurrent.atomic.AtomicMarkableReference;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author Pascal Felber
@@ -53,57 +54,242 @@ public class IntSetLinkedListLockFree implements IntSet {
 		  return next;
 	  }
   }
+  
+  /*
+   * Per-thread hint to the last node visited before the key of an
+   * operation, so that the next one on a nearby key does not walk again
+   * from m_first.
+   */
+  public class Finger {
+	  private Node node;
+  }
 
   private final Node m_first;
-  private AtomicInteger adds;
-  private AtomicInteger rems;
+  private LongAdder adds;
+  private LongAdder rems;
+  private volatile SnapCollector m_collector;
+  private final ReentrantLock m_scanLock;
+  private final ThreadLocal<Finger> m_finger;
 
   public IntSetLinkedListLockFree() {
     Node min = new Node(Integer.MIN_VALUE);
     Node max = new Node(Integer.MAX_VALUE);
     min.setNext(new AtomicMarkableReference<Node>(max, false));
     m_first = min;
-    adds = new AtomicInteger();
-    rems = new AtomicInteger();
+    adds = new LongAdder();
+    rems = new LongAdder();
+    m_collector = null;
+    m_scanLock = new ReentrantLock();
+    m_finger = ThreadLocal.withInitial(Finger::new);
   }
 
   public boolean add(int value) {
+	Finger finger = m_finger.get();
+	return add(start(finger, value), value, finger);
+  }
+
+  public boolean remove(int value) {
+	Finger finger = m_finger.get();
+	return remove(start(finger, value), value, finger);
+  }
+
+  public boolean contains(int value) {
+	Finger finger = m_finger.get();
+	return contains(start(finger, value), value, finger);
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	int i = 0;
+	
+	while(i < values.length) {
+		Window window = find(start, values[i]);
+		Node previous = window.getPrevious();
+		Node next = window.getNext();
+		
+		if(next.getValue() == values[i]) {
+			report(next, true);
+			if (results != null) results[i] = false;
+			start = next;
+			i++;
+			continue;
+		}
+		
+		//todos os valores seguintes que caem na mesma janela entram com um so CAS
+		int j = i + 1;
+		while(j < values.length && values[j] < next.getValue())
+			j++;
+		
+		Node[] nodes = new Node[j - i];
+		Node chain = next;
+		for(int k = j - 1; k >= i; k--) {
+			Node node = new Node(values[k]);
+			node.setNext(new AtomicMarkableReference<Node>(chain, false));
+			chain = node;
+			nodes[k - i] = node;
+		}
+		
+		if(previous.getNext().compareAndSet(next, chain, false, false)) {
+			adds.add(j - i);
+			count += j - i;
+			for(int k = 0; k < nodes.length; k++)
+				report(nodes[k], true);
+			for(; i < j; i++)
+				if (results != null) results[i] = true;
+			start = nodes[nodes.length - 1];
+		} else start = previous;
+	}
+	return count;
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	
+	for(int i = 0; i < values.length; i++) {
+		int value = values[i];
+		boolean result;
+		
+		while(true) {
+			Window window = find(start, value);
+			Node previous = window.getPrevious();
+			Node next = window.getNext();
+			start = previous;
+			
+			if(next.getValue() == value && !isLastNode(next)) {
+				Node succ = next.getNext().getReference();
+				if(!next.getNext().compareAndSet(succ, succ, false, true))
+					continue;
+				
+				rems.increment();
+				report(next, false);
+				previous.getNext().compareAndSet(next, succ, false, false);
+				result = true;
+			} else result = false;
+			break;
+		}
+		if(result) count++;
+		if (results != null) results[i] = result;
+	}
+	return count;
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node next = m_first;
+	
+	for(int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(next.getValue() < value)
+			next = next.getNext().getReference();
+		
+		if(next.getValue()!=value || isLastNode(next)) {
+			if (results != null) results[i] = false;
+			continue;
+		}
+		boolean result = !next.getNext().isMarked();
+		report(next, result);
+		if(result) count++;
+		if (results != null) results[i] = result;
+	}
+	return count;
+  }
+
+  public int[] range(int lo, int hi) {
+	m_scanLock.lock();
+	try {
+		SnapCollector collector = new SnapCollector();
+		m_collector = collector;
+		
+		Node node = m_first.getNext().getReference();
+		int value;
+		while((value = node.getValue()) < hi) {
+			boolean removed = node.getNext().isMarked();
+			if(value >= lo && !removed)
+				collector.addNode(node, value);
+			node = node.getNext().getReference();
+		}
+		
+		int[] result = collector.finish(lo, hi);
+		m_collector = null;
+		return result;
+	} finally {
+		m_scanLock.unlock();
+	}
+  }
+
+  /*
+   * Reports a node seen as inserted or removed to the scan in progress, if
+   * any, so that the scan can account for updates behind its traversal.
+   */
+  private void report(Node node, boolean inserted) {
+	SnapCollector collector = m_collector;
+	if(collector != null && collector.isActive())
+		collector.report(node, node.getValue(), inserted);
+  }
+
+  /*
+   * The operations below start at an arbitrary node of the list instead of
+   * m_first, so that other sets (e.g. IntSetSplitOrderedHash) can use this
+   * list as a backing chain. head must never be removed.
+   */
+
+  boolean add(Node head, int value) {
+	return add(head, value, null);
+  }
+
+  boolean remove(Node head, int value) {
+	return remove(head, value, null);
+  }
+
+  boolean contains(Node head, int value) {
+	return contains(head, value, null);
+  }
+
+  private boolean add(Node head, int value, Finger finger) {
 	while(true) {
-		Window window = find(m_first, value);
+		Window window = find(head, value);
 		Node previous = window.getPrevious();
 		Node next = window.getNext();
+		if(finger != null) finger.node = previous;
 		
 		//if(next.getValue()==Integer.MAX_VALUE) //se a lista so tiver os dois nos sentinela
 			//return false;
 		
-		if(next.getValue() == value)
+		if(next.getValue() == value) {
+			report(next, true);
 			return false;
-		else {
+		} else {
 			Node node = new Node(value);
 			node.setNext(new AtomicMarkableReference<Node>(next, false));
 			if(previous.getNext().compareAndSet(next, node, false, false)) {
-				adds.getAndIncrement();
+				adds.increment();
+				report(node, true);
 				return true;
 			}
 		}
 	}
   }
 
-  public boolean remove(int value) {
+  private boolean remove(Node head, int value, Finger finger) {
 	boolean snip;
 	
 	while(true) {
-		Window window = find(m_first, value);
+		Window window = find(head, value);
 		Node previous = window.getPrevious();
 		Node next = window.getNext();
+		if(finger != null) finger.node = previous;
 		
-		if(next.getValue() == value) {
+		if(next.getValue() == value && !isLastNode(next)) {
 			Node succ = next.getNext().getReference();
-			snip = next.getNext().attemptMark(succ, true);
+			//attemptMark tambem devolve true se outra thread ja o tiver marcado
+			snip = next.getNext().compareAndSet(succ, succ, false, true);
 			if(!snip)
 				continue;
 			
-			rems.getAndIncrement();
+			rems.increment();
+			report(next, false);
 			
 			previous.getNext().compareAndSet(next, succ, false, false);
 			
@@ -112,14 +298,69 @@ public class IntSetLinkedListLockFree implements IntSet {
 	}
   }
 
-  public boolean contains(int value) {
-	boolean[] marked = {false};
-	Node next = m_first;
+  private boolean contains(Node head, int value, Finger finger) {
+	Node previous = null;
+	Node next = head;
 	
-	while(next.getValue() < value)
-		next = next.getNext().get(marked);
+	while(next.getValue() < value) {
+		previous = next;
+		next = next.getNext().getReference();
+	}
+	if(finger != null && previous != null) finger.node = previous;
 	
-	return (next.getValue()==value && !marked[0]);
+	//o mark no next do proprio no indica se foi removido; a sentinela final nao tem next
+	if(next.getValue() != value || isLastNode(next))
+		return false;
+	boolean result = !next.getNext().isMarked();
+	report(next, result);
+	return result;
+  }
+  
+  /*
+   * Inserts a node that is not counted as an element of the set (e.g. a
+   * bucket sentinel), returning the node already holding value if any.
+   */
+  Node addSentinel(Node head, int value) {
+	while(true) {
+		Window window = find(head, value);
+		Node previous = window.getPrevious();
+		Node next = window.getNext();
+		
+		if(next.getValue() == value)
+			return next;
+		
+		Node node = new Node(value);
+		node.setNext(new AtomicMarkableReference<Node>(next, false));
+		if(previous.getNext().compareAndSet(next, node, false, false))
+			return node;
+	}
+  }
+  
+  /*
+   * The finger is only a safe starting point while it is unmarked: a
+   * removed node may point past nodes inserted after its removal.
+   */
+  private Node start(Finger finger, int value) {
+	Node node = finger.node;
+	if(node != null && node.getValue() < value && !node.getNext().isMarked())
+		return node;
+	return m_first;
+  }
+  
+  Node getFirst() {
+	return m_first;
+  }
+  
+  int getAdds() {
+	return (int) adds.sum();
+  }
+  
+  int getRemoves() {
+	return (int) rems.sum();
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
   }
 
   public void validate() {
@@ -147,7 +388,7 @@ public class IntSetLinkedListLockFree implements IntSet {
       
       value = node.getValue();
     }
-    assert (adds.get() - rems.get()) == totalSize : "list has a total size of " +totalSize+" but it should be "+ (adds.get() - rems.get());
+    assert (adds.sum() - rems.sum()) == totalSize : "list has a total size of " +totalSize+" but it should be "+ (adds.sum() - rems.sum());
   }
   
   private Window find(Node head, int value) {
@@ -158,7 +399,8 @@ public class IntSetLinkedListLockFree implements IntSet {
 	  boolean snip;
 	  
 	  retry: while(true) {
-		  previous = head;
+		  //um ponto de partida que entretanto foi removido nunca deixaria o snip ter sucesso
+		  previous = head.getNext().isMarked() ? m_first : head;
 		  curr = previous.getNext().getReference();
 		  
 		  //System.out.println("previous: " + previous.getValue());
@@ -172,6 +414,7 @@ public class IntSetLinkedListLockFree implements IntSet {
 			  succ = curr.getNext().get(marked);
 			  
 			  while(marked[0]) {
+				  report(curr, false);
 				  snip = previous.getNext().compareAndSet(curr, succ, false, false);
 				  if(!snip)
 					  continue retry;
@@ -0,0 +1,343 @@
+package cp.benchmark.intset;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Same algorithm as {@link IntSetLinkedListLockFree}, but nodes live outside
+ * the Java heap, in chunks of direct ByteBuffers. A node is an int index into
+ * the arena, and its record is two 64-bit words: the value, and the next word
+ * packing the index of the successor with the mark in the lowest bit, so that
+ * a single CAS on it replaces AtomicMarkableReference.
+ *
+ * Unlinked nodes are recycled with epoch-based reclamation: a node retired
+ * while its remover was in epoch e is only reused once that thread enters
+ * epoch e + 3, when no operation can still hold its index. This also rules
+ * out ABA on the next words.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetLinkedListLockFreeOffHeap implements IntSet {
+
+  static final int NODE_BYTES = 16;
+  static final int CHUNK_BITS = 16;
+  static final int CHUNK_NODES = 1 << CHUNK_BITS;
+  static final int MAX_CHUNKS = 1 << 14;
+  static final int HEAD = 0;
+  static final int TAIL = 1;
+  static final int ADVANCE_PERIOD = 64;
+
+  private static final VarHandle WORD = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  public class IntStack {
+    private int[] m_items = new int[64];
+    private int m_size = 0;
+
+    public void push(int item) {
+      if (m_size == m_items.length)
+        m_items = java.util.Arrays.copyOf(m_items, m_size << 1);
+      m_items[m_size++] = item;
+    }
+
+    public int pop() {
+      return m_items[--m_size];
+    }
+
+    public boolean isEmpty() {
+      return m_size == 0;
+    }
+
+    public int size() {
+      return m_size;
+    }
+
+    public void moveTo(IntStack other) {
+      while (m_size > 0)
+        other.push(pop());
+    }
+  }
+
+  public class ThreadState {
+    // (epoch << 1) | active
+    private volatile long m_state;
+    private final IntStack[] m_retired = { new IntStack(), new IntStack(), new IntStack() };
+    private final IntStack m_free = new IntStack();
+    private long m_epoch = -1;
+    private int m_ops = 0;
+    // window returned by find
+    private int m_previous;
+    private int m_next;
+    private ThreadState m_link;
+  }
+
+  private final AtomicReferenceArray<ByteBuffer> m_chunks;
+  private final AtomicInteger m_allocated;
+  private final AtomicLong m_globalEpoch;
+  private final AtomicReference<ThreadState> m_threads;
+  private final ThreadLocal<ThreadState> m_state;
+  private LongAdder adds;
+  private LongAdder rems;
+
+  public IntSetLinkedListLockFreeOffHeap() {
+    m_chunks = new AtomicReferenceArray<ByteBuffer>(MAX_CHUNKS);
+    m_allocated = new AtomicInteger(2);
+    m_globalEpoch = new AtomicLong();
+    m_threads = new AtomicReference<ThreadState>(null);
+    m_state = ThreadLocal.withInitial(this::register);
+    adds = new LongAdder();
+    rems = new LongAdder();
+    setValue(HEAD, Integer.MIN_VALUE);
+    setValue(TAIL, Integer.MAX_VALUE);
+    WORD.setVolatile(chunk(HEAD), offset(HEAD) + 8, pack(TAIL, false));
+    WORD.setVolatile(chunk(TAIL), offset(TAIL) + 8, pack(HEAD, false));
+  }
+
+  public boolean add(int value) {
+    ThreadState state = enter();
+    try {
+      int node = -1;
+      while (true) {
+        find(state, value);
+        int previous = state.m_previous;
+        int next = state.m_next;
+
+        if (getValue(next) == value) {
+          // never published, so it can be reused right away
+          if (node >= 0)
+            state.m_free.push(node);
+          return false;
+        }
+        if (node < 0) {
+          node = allocate(state);
+          setValue(node, value);
+        }
+        WORD.setVolatile(chunk(node), offset(node) + 8, pack(next, false));
+        if (casNext(previous, pack(next, false), pack(node, false))) {
+          adds.increment();
+          return true;
+        }
+      }
+    } finally {
+      exit(state);
+    }
+  }
+
+  public boolean remove(int value) {
+    ThreadState state = enter();
+    try {
+      while (true) {
+        find(state, value);
+        int previous = state.m_previous;
+        int next = state.m_next;
+
+        if (getValue(next) != value || next == TAIL)
+          return false;
+
+        long succ = getNext(next);
+        if (isMarked(succ))
+          continue;
+        if (!casNext(next, succ, succ | 1))
+          continue;
+
+        rems.increment();
+        if (casNext(previous, pack(next, false), succ))
+          retire(state, next);
+        return true;
+      }
+    } finally {
+      exit(state);
+    }
+  }
+
+  public boolean contains(int value) {
+    ThreadState state = enter();
+    try {
+      int next = HEAD;
+      while (getValue(next) < value)
+        next = indexOf(getNext(next));
+      return (getValue(next) == value && next != TAIL && !isMarked(getNext(next)));
+    } finally {
+      exit(state);
+    }
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int previous_value = getValue(HEAD);
+    int totalSize = 0;
+    int linked = 0;
+
+    int node = indexOf(getNext(HEAD));
+    while (node != TAIL) {
+      linked++;
+      long next = getNext(node);
+      if (!isMarked(next)) {
+        int value = getValue(node);
+        totalSize++;
+        assert previous_value < value : "list is unordered: " + previous_value + " before " + value;
+        assert !checker.contains(value) : "list has duplicates: " + value;
+        checker.add(value);
+        previous_value = value;
+      }
+      node = indexOf(next);
+    }
+    assert (adds.sum() - rems.sum()) == totalSize : "list has a total size of " + totalSize + " but it should be " + (adds.sum() - rems.sum());
+
+    // every allocated node is either linked, waiting for its epoch, or free
+    int recycled = 0;
+    for (ThreadState state = m_threads.get(); state != null; state = state.m_link) {
+      recycled += state.m_free.size();
+      for (int i = 0; i < state.m_retired.length; i++)
+        recycled += state.m_retired[i].size();
+    }
+    assert m_allocated.get() == 2 + linked + recycled : "arena has " + m_allocated.get() + " nodes but only " + (2 + linked + recycled) + " are accounted for";
+  }
+
+  private void find(ThreadState state, int value) {
+    int previous;
+    int curr;
+    long succ;
+
+    retry: while (true) {
+      previous = HEAD;
+      curr = indexOf(getNext(previous));
+
+      while (true) {
+        if (curr == TAIL)
+          break;
+
+        succ = getNext(curr);
+        while (isMarked(succ)) {
+          if (!casNext(previous, pack(curr, false), succ & ~1L))
+            continue retry;
+          retire(state, curr);
+          curr = indexOf(succ);
+          if (curr == TAIL)
+            break;
+          succ = getNext(curr);
+        }
+
+        if (curr == TAIL || getValue(curr) >= value)
+          break;
+
+        previous = curr;
+        curr = indexOf(succ);
+      }
+
+      state.m_previous = previous;
+      state.m_next = curr;
+      return;
+    }
+  }
+
+  private ThreadState enter() {
+    ThreadState state = m_state.get();
+    long epoch;
+    do {
+      epoch = m_globalEpoch.get();
+      state.m_state = (epoch << 1) | 1;
+    } while (m_globalEpoch.get() != epoch);
+
+    if (state.m_epoch != epoch) {
+      // nodes in this bucket were retired in epoch (epoch - 3) or earlier
+      state.m_retired[(int) (epoch % 3)].moveTo(state.m_free);
+      state.m_epoch = epoch;
+    }
+    if (++state.m_ops % ADVANCE_PERIOD == 0)
+      tryAdvance(epoch);
+    return state;
+  }
+
+  private void exit(ThreadState state) {
+    state.m_state = state.m_epoch << 1;
+  }
+
+  private void tryAdvance(long epoch) {
+    for (ThreadState state = m_threads.get(); state != null; state = state.m_link) {
+      long s = state.m_state;
+      if ((s & 1) == 1 && (s >>> 1) != epoch)
+        return;
+    }
+    m_globalEpoch.compareAndSet(epoch, epoch + 1);
+  }
+
+  private void retire(ThreadState state, int node) {
+    state.m_retired[(int) (state.m_epoch % 3)].push(node);
+  }
+
+  private ThreadState register() {
+    ThreadState state = new ThreadState();
+    ThreadState head;
+    do {
+      head = m_threads.get();
+      state.m_link = head;
+    } while (!m_threads.compareAndSet(head, state));
+    return state;
+  }
+
+  private int allocate(ThreadState state) {
+    if (!state.m_free.isEmpty())
+      return state.m_free.pop();
+    int node = m_allocated.getAndIncrement();
+    if ((node >>> CHUNK_BITS) >= MAX_CHUNKS)
+      throw new OutOfMemoryError("off-heap arena is full");
+    return node;
+  }
+
+  private ByteBuffer chunk(int node) {
+    int index = node >>> CHUNK_BITS;
+    ByteBuffer chunk = m_chunks.get(index);
+    if (chunk == null) {
+      // 64-bit words must be aligned for the VarHandle CAS
+      ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_NODES * NODE_BYTES + 8).alignedSlice(8).order(ByteOrder.nativeOrder());
+      m_chunks.compareAndSet(index, null, buffer);
+      chunk = m_chunks.get(index);
+    }
+    return chunk;
+  }
+
+  private static int offset(int node) {
+    return (node & (CHUNK_NODES - 1)) * NODE_BYTES;
+  }
+
+  private int getValue(int node) {
+    return (int) (long) WORD.get(chunk(node), offset(node));
+  }
+
+  private void setValue(int node, int value) {
+    WORD.set(chunk(node), offset(node), (long) value);
+  }
+
+  private long getNext(int node) {
+    return (long) WORD.getVolatile(chunk(node), offset(node) + 8);
+  }
+
+  private boolean casNext(int node, long expected, long next) {
+    return WORD.compareAndSet(chunk(node), offset(node) + 8, expected, next);
+  }
+
+  private static long pack(int node, boolean marked) {
+    return ((long) node << 1) | (marked ? 1 : 0);
+  }
+
+  private static int indexOf(long next) {
+    return (int) (next >>> 1);
+  }
+
+  private static boolean isMarked(long next) {
+    return (next & 1) != 0;
+  }
+}
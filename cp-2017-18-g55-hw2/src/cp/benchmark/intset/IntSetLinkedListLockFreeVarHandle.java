@@ -0,0 +1,210 @@
+package cp.benchmark.intset;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Same algorithm as {@link IntSetLinkedListLockFree}, without
+ * AtomicMarkableReference. The next field is a plain volatile reference
+ * updated through a VarHandle, and a node is marked by swinging its next
+ * field to a marker, a dedicated wrapper around its successor, as
+ * ConcurrentSkipListMap does. Once marked, the next field of a node can no
+ * longer be the target of a CAS, exactly like a marked reference.
+ *
+ * An insert only allocates its node and a remove only its marker, and
+ * successful CASes allocate nothing. find() returns the predecessor alone
+ * and the callers re-read its successor, so traversals do not allocate a
+ * window either.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetLinkedListLockFreeVarHandle implements IntSet {
+
+  private static final VarHandle NEXT;
+
+  static {
+    try {
+      NEXT = MethodHandles.lookup().findVarHandle(Node.class, "m_next", Node.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  public class Node {
+    private final int m_value;
+    private final boolean m_marker;
+    private volatile Node m_next;
+
+    public Node(int value, Node next) {
+      m_value = value;
+      m_marker = false;
+      m_next = next;
+    }
+
+    public Node(int value) {
+      this(value, null);
+    }
+
+    // a marker, whose next field is the successor of the marked node
+    public Node(Node next) {
+      m_value = 0;
+      m_marker = true;
+      m_next = next;
+    }
+
+    public int getValue() {
+      return m_value;
+    }
+
+    public Node getNext() {
+      return m_next;
+    }
+
+    public boolean isMarker() {
+      return m_marker;
+    }
+
+    public boolean isMarked() {
+      Node next = m_next;
+      return next != null && next.m_marker;
+    }
+
+    public boolean casNext(Node expected, Node next) {
+      return NEXT.compareAndSet(this, expected, next);
+    }
+  }
+
+  private final Node m_first;
+  private LongAdder adds;
+  private LongAdder rems;
+
+  public IntSetLinkedListLockFreeVarHandle() {
+    Node min = new Node(Integer.MIN_VALUE);
+    Node max = new Node(Integer.MAX_VALUE);
+    min.m_next = max;
+    m_first = min;
+    adds = new LongAdder();
+    rems = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    Node node = null;
+    while (true) {
+      Node previous = find(value);
+      Node next = previous.getNext();
+      // previous was marked, or a smaller value went in after find
+      if (next.isMarker() || next.getValue() < value)
+        continue;
+      if (next.isMarked())
+        continue;
+      if (next.getValue() == value)
+        return false;
+
+      if (node == null)
+        node = new Node(value, next);
+      else node.m_next = next;
+      if (previous.casNext(next, node)) {
+        adds.increment();
+        return true;
+      }
+    }
+  }
+
+  public boolean remove(int value) {
+    Node marker = null;
+    while (true) {
+      Node previous = find(value);
+      Node next = previous.getNext();
+      if (next.isMarker() || next.getValue() < value)
+        continue;
+      if (next.getValue() != value || isLast(next))
+        return false;
+
+      Node succ = next.getNext();
+      if (succ.isMarker())
+        // someone else removed it, find() will snip it
+        continue;
+
+      if (marker == null)
+        marker = new Node(succ);
+      else marker.m_next = succ;
+      if (!next.casNext(succ, marker))
+        continue;
+
+      rems.increment();
+      previous.casNext(next, succ);
+      return true;
+    }
+  }
+
+  public boolean contains(int value) {
+    Node next = m_first.getNext();
+    while (next.getValue() < value)
+      next = successor(next);
+    return (next.getValue() == value && !isLast(next) && !next.isMarked());
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int previous_value = m_first.getValue();
+    int totalSize = 0;
+
+    Node node = successor(m_first);
+    while (node.getValue() < Integer.MAX_VALUE) {
+      if (!node.isMarked()) {
+        int value = node.getValue();
+        totalSize++;
+        assert previous_value < value : "list is unordered: " + previous_value + " before " + value;
+        assert !checker.contains(value) : "list has duplicates: " + value;
+        checker.add(value);
+        previous_value = value;
+      }
+      node = successor(node);
+    }
+    assert (adds.sum() - rems.sum()) == totalSize : "list has a total size of " + totalSize + " but it should be " + (adds.sum() - rems.sum());
+  }
+
+  /*
+   * Returns the last node before value, unmarked when it was read, snipping
+   * the marked nodes found on the way.
+   */
+  private Node find(int value) {
+    retry: while (true) {
+      Node previous = m_first;
+      Node curr = previous.getNext();
+
+      while (true) {
+        Node succ = curr.getNext();
+        while (succ != null && succ.isMarker()) {
+          if (!previous.casNext(curr, succ.getNext()))
+            continue retry;
+          curr = succ.getNext();
+          succ = curr.getNext();
+        }
+
+        if (curr.getValue() >= value)
+          return previous;
+
+        previous = curr;
+        curr = succ;
+      }
+    }
+  }
+
+  // only the tail sentinel has no successor
+  private static boolean isLast(Node node) {
+    return node.getNext() == null;
+  }
+
+  private static Node successor(Node node) {
+    Node next = node.getNext();
+    return next.isMarker() ? next.getNext() : next;
+  }
+}
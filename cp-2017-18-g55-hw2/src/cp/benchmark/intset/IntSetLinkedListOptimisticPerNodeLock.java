@@ -1,6 +1,7 @@
 package cp.benchmark.intset;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * @author Pascal Felber
@@ -12,14 +13,14 @@ public class IntSetLinkedListOptimisticPerNodeLock implements IntSet {
   public class Node {
     private final int m_value;
     private Node m_next;
-    private ReentrantLock lock;
+    private NodeLock lock;
     private int add;
     private int remove;
 
     public Node(int value, Node next) {
       m_value = value;
       m_next = next;
-      lock = new ReentrantLock();
+      lock = m_locks.get();
       add=0;
       remove=0;
     }
@@ -74,12 +75,20 @@ public class IntSetLinkedListOptimisticPerNodeLock implements IntSet {
   }
 
   private final Node m_first;
+  private final LongAdder m_size;
+  private final Supplier<NodeLock> m_locks;
 
   public IntSetLinkedListOptimisticPerNodeLock() {
+    this(NodeLock.Reentrant::new);
+  }
+
+  public IntSetLinkedListOptimisticPerNodeLock(Supplier<NodeLock> locks) {
+    m_locks = locks;
     Node min = new Node(Integer.MIN_VALUE);
     Node max = new Node(Integer.MAX_VALUE);
     min.setNext(max);
     m_first = min;
+    m_size = new LongAdder();
   }
 
   public boolean add(int value) {
@@ -103,6 +112,7 @@ public class IntSetLinkedListOptimisticPerNodeLock implements IntSet {
 	    		else {
 	    			previous.setNext(new Node(value, next));
 	    			previous.incAdd();
+	    			m_size.increment();
 	    			return true;
 	    		}
 	    	}
@@ -134,6 +144,7 @@ public class IntSetLinkedListOptimisticPerNodeLock implements IntSet {
     				previous.incAmountRemove(next.getRemove());
 	    			previous.setNext(next.getNext());
 	    			previous.incRemove();
+	    			m_size.decrement();
 	    			return true;
 	    		} else return false;
 	    	}
@@ -171,6 +182,131 @@ public class IntSetLinkedListOptimisticPerNodeLock implements IntSet {
 	}
   }
   
+  public int addAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			Node previous = start;
+			Node next = previous.getNext();
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous = next;
+				next = previous.getNext();
+			}
+			
+			previous.lockNode();
+			next.lockNode();
+			try {
+				if(validateLogic(previous, next)) {
+					boolean result = value != v;
+					if(result) {
+						Node node = new Node(value, next);
+						previous.setNext(node);
+						previous.incAdd();
+						m_size.increment();
+						start = node;
+						count++;
+					} else start = previous;
+					if (results != null) results[i] = result;
+					break;
+				}
+				//a janela anterior pode ja nao estar na lista
+				start = m_first;
+			} finally {
+				previous.unlockNode();
+				next.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			Node previous = start;
+			Node next = previous.getNext();
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous = next;
+				next = previous.getNext();
+			}
+			
+			previous.lockNode();
+			next.lockNode();
+			try {
+				if(validateLogic(previous, next)) {
+					boolean result = value == v;
+					if(result) {
+						previous.incAmountAdd(next.getAdd());
+						previous.incAmountRemove(next.getRemove());
+						previous.setNext(next.getNext());
+						previous.incRemove();
+						m_size.decrement();
+						count++;
+					}
+					start = previous;
+					if (results != null) results[i] = result;
+					break;
+				}
+				//a janela anterior pode ja nao estar na lista
+				start = m_first;
+			} finally {
+				previous.unlockNode();
+				next.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			Node previous = start;
+			Node next = previous.getNext();
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous = next;
+				next = previous.getNext();
+			}
+			
+			previous.lockNode();
+			next.lockNode();
+			try {
+				if(validateLogic(previous, next)) {
+					boolean result = value == v;
+					if(result) count++;
+					start = previous;
+					if (results != null) results[i] = result;
+					break;
+				}
+				//a janela anterior pode ja nao estar na lista
+				start = m_first;
+			} finally {
+				previous.unlockNode();
+				next.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int size() {
+    return (int) m_size.sum();
+  }
+
   public void validate() {
     java.util.Set<Integer> checker = new java.util.HashSet<>();
     int totalSize=2;
@@ -1,6 +1,7 @@
 package cp.benchmark.intset;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * @author Pascal Felber
@@ -12,14 +13,14 @@ public class IntSetLinkedListPerNodeLock implements IntSet {
   public class Node {
     private final int m_value;
     private Node m_next;
-    private ReentrantLock lock;
+    private NodeLock lock;
     private int add;
     private int remove;
 
     public Node(int value, Node next) {
       m_value = value;
       m_next = next;
-      lock = new ReentrantLock();
+      lock = m_locks.get();
       add=0;
       remove=0;
     }
@@ -75,12 +76,20 @@ public class IntSetLinkedListPerNodeLock implements IntSet {
   }
 
   private final Node m_first;
+  private final LongAdder m_size;
+  private final Supplier<NodeLock> m_locks;
 
   public IntSetLinkedListPerNodeLock() {
+    this(NodeLock.Reentrant::new);
+  }
+
+  public IntSetLinkedListPerNodeLock(Supplier<NodeLock> locks) {
+    m_locks = locks;
     Node min = new Node(Integer.MIN_VALUE);
     Node max = new Node(Integer.MAX_VALUE);
     min.setNext(max);
     m_first = min;
+    m_size = new LongAdder();
   }
 
   public boolean add(int value) {
@@ -105,6 +114,7 @@ public class IntSetLinkedListPerNodeLock implements IntSet {
     		else {
     			previous.setNext(new Node(value, next));
     			previous.incAdd();
+    			m_size.increment();
     			return true;
     		}
     	} finally {
@@ -135,6 +145,7 @@ public class IntSetLinkedListPerNodeLock implements IntSet {
     		if(value == v) {
     			previous.setNext(next.getNext());
     			previous.incRemove();
+    			m_size.decrement();
     			previous.incAmountAdd(next.getAdd());
     			previous.incAmountRemove(next.getRemove());
     			return true;
@@ -175,6 +186,118 @@ public class IntSetLinkedListPerNodeLock implements IntSet {
     }
   }
 
+  public int addAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node previous = m_first;
+	previous.lockNode();
+	Node next = previous.getNext();
+	next.lockNode();
+	
+	//uma so passagem hand-over-hand para todo o batch
+	try {
+		for (int i = 0; i < values.length; i++) {
+			int value = values[i];
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous.unlockNode();
+				previous = next;
+				next = previous.getNext();
+				next.lockNode();
+			}
+			
+			boolean result = value != v;
+			if(result) {
+				Node node = new Node(value, next);
+				node.lockNode();
+				previous.setNext(node);
+				previous.incAdd();
+				m_size.increment();
+				previous.unlockNode();
+				previous = node;
+				count++;
+			}
+			if (results != null) results[i] = result;
+		}
+		return count;
+	} finally {
+		next.unlockNode();
+		previous.unlockNode();
+	}
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node previous = m_first;
+	previous.lockNode();
+	Node next = previous.getNext();
+	next.lockNode();
+	
+	try {
+		for (int i = 0; i < values.length; i++) {
+			int value = values[i];
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous.unlockNode();
+				previous = next;
+				next = previous.getNext();
+				next.lockNode();
+			}
+			
+			boolean result = value == v;
+			if(result) {
+				Node removed = next;
+				next = removed.getNext();
+				next.lockNode();
+				previous.setNext(next);
+				previous.incRemove();
+				m_size.decrement();
+				previous.incAmountAdd(removed.getAdd());
+				previous.incAmountRemove(removed.getRemove());
+				removed.unlockNode();
+				count++;
+			}
+			if (results != null) results[i] = result;
+		}
+		return count;
+	} finally {
+		next.unlockNode();
+		previous.unlockNode();
+	}
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node previous = m_first;
+	previous.lockNode();
+	Node next = previous.getNext();
+	next.lockNode();
+	
+	try {
+		for (int i = 0; i < values.length; i++) {
+			int value = values[i];
+			int v;
+			while ((v = next.getValue()) < value) {
+				previous.unlockNode();
+				previous = next;
+				next = previous.getNext();
+				next.lockNode();
+			}
+			
+			boolean result = value == v;
+			if(result) count++;
+			if (results != null) results[i] = result;
+		}
+		return count;
+	} finally {
+		next.unlockNode();
+		previous.unlockNode();
+	}
+  }
+
+  public int size() {
+    return (int) m_size.sum();
+  }
+
   public void validate() {
 	  int totalSize=2;
 	  int totalAdds=m_first.getAdd();
@@ -99,6 +99,88 @@ public class IntSetLinkedListSynchronized implements IntSet {
     return result;
   }
 
+  public synchronized int[] range(int lo, int hi) {
+    int[] values = new int[16];
+    int size = 0;
+    Node next = m_first.getNext();
+    int v;
+    while ((v = next.getValue()) < hi) {
+      if (v >= lo) {
+        if (size == values.length) values = java.util.Arrays.copyOf(values, size << 1);
+        values[size++] = v;
+      }
+      next = next.getNext();
+    }
+    return java.util.Arrays.copyOf(values, size);
+  }
+
+  public synchronized int addAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node previous = m_first;
+    Node next = previous.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value) {
+        previous = next;
+        next = previous.getNext();
+      }
+      boolean result = v != value;
+      if (result) {
+        // the next value can only go after the new node
+        Node node = new Node(value, next);
+        previous.setNext(node);
+        previous = node;
+        totalAdds++;
+        count++;
+      }
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
+  public synchronized int removeAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node previous = m_first;
+    Node next = previous.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value) {
+        previous = next;
+        next = previous.getNext();
+      }
+      boolean result = v == value;
+      if (result) {
+        next = next.getNext();
+        previous.setNext(next);
+        totalRemoves++;
+        count++;
+      }
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
+  public synchronized int containsAll(int[] values, boolean[] results) {
+    int count = 0;
+    Node next = m_first.getNext();
+    for (int i = 0; i < values.length; i++) {
+      int value = values[i];
+      int v;
+      while ((v = next.getValue()) < value)
+        next = next.getNext();
+      boolean result = v == value;
+      if (result) count++;
+      if (results != null) results[i] = result;
+    }
+    return count;
+  }
+
+  public synchronized int size() {
+    return totalAdds - totalRemoves;
+  }
+
   public void validate() {
 	 int totalSize=2;
 	 int initialSize=2;
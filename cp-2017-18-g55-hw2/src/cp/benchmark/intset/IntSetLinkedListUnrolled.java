@@ -0,0 +1,347 @@
+package cp.benchmark.intset;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unrolled list: every node holds a sorted chunk of keys, all greater than or
+ * equal to its low key and smaller than the low key of the next node.
+ * Updates lock the owning chunk, validate it like the lazy list does, and
+ * split it when it overflows or merge it with its successor when it runs low;
+ * a chunk that still ends up empty is unlinked from its predecessor. The last
+ * chunk also holds Integer.MAX_VALUE, the low key of the tail sentinel.
+ * contains() takes no locks: it reads a chunk under its version counter
+ * (odd while a writer changes it) and retries if the version moved.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetLinkedListUnrolled implements IntSet {
+
+  static final int DEFAULT_CHUNK_SIZE = 32;
+
+  public class Node {
+    private final int m_lowKey;
+    private final int[] m_keys;
+    private int m_count;
+    private volatile Node m_next;
+    private volatile boolean marked;
+    private volatile int version;
+    private ReentrantLock lock;
+    private int add;
+    private int remove;
+
+    public Node(int lowKey, int capacity) {
+      m_lowKey = lowKey;
+      m_keys = new int[capacity];
+      m_count = 0;
+      marked = false;
+      version = 0;
+      lock = new ReentrantLock();
+      add = 0;
+      remove = 0;
+    }
+
+    public int getLowKey() {
+      return m_lowKey;
+    }
+
+    public void setNext(Node next) {
+      m_next = next;
+    }
+
+    public Node getNext() {
+      return m_next;
+    }
+
+    public int getAdd() {
+      return add;
+    }
+
+    public int getRemove() {
+      return remove;
+    }
+
+    public void markNode() {
+      marked = true;
+    }
+
+    public boolean isMarked() {
+      return marked;
+    }
+
+    public void lockNode() {
+      lock.lock();
+    }
+
+    public void unlockNode() {
+      lock.unlock();
+    }
+
+    public void beginWrite() {
+      version++;
+      // keep the chunk writes below from moving above the odd version
+      VarHandle.storeStoreFence();
+    }
+
+    public void endWrite() {
+      version++;
+    }
+
+    public int indexOf(int value) {
+      return Arrays.binarySearch(m_keys, 0, m_count, value);
+    }
+  }
+
+  private final Node m_first;
+  private final LongAdder m_size;
+  private final int m_chunkSize;
+
+  public IntSetLinkedListUnrolled() {
+    this(DEFAULT_CHUNK_SIZE);
+  }
+
+  public IntSetLinkedListUnrolled(int chunkSize) {
+    m_chunkSize = Math.max(4, chunkSize);
+    Node min = new Node(Integer.MIN_VALUE, m_chunkSize);
+    Node max = new Node(Integer.MAX_VALUE, 0);
+    min.setNext(max);
+    m_first = min;
+    m_size = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    while (true) {
+      Node node = locate(value);
+
+      node.lockNode();
+      try {
+        if (validateLogic(node, value)) {
+          int index = node.indexOf(value);
+          if (index >= 0)
+            return false;
+
+          node.beginWrite();
+          try {
+            if (node.m_count == m_chunkSize)
+              split(node, value);
+            else
+              insert(node, -index - 1, value);
+            node.add++;
+            m_size.increment();
+          } finally {
+            node.endWrite();
+          }
+          return true;
+        }
+      } finally {
+        node.unlockNode();
+      }
+    }
+  }
+
+  public boolean remove(int value) {
+    while (true) {
+      Node node = locate(value);
+
+      node.lockNode();
+      try {
+        if (!validateLogic(node, value))
+          continue;
+        int index = node.indexOf(value);
+        if (index < 0)
+          return false;
+
+        node.beginWrite();
+        try {
+          System.arraycopy(node.m_keys, index + 1, node.m_keys, index, node.m_count - index - 1);
+          node.m_count--;
+          node.remove++;
+          m_size.decrement();
+        } finally {
+          node.endWrite();
+        }
+        if (node.m_count < (m_chunkSize >> 2))
+          merge(node);
+      } finally {
+        node.unlockNode();
+      }
+      // merge() leaves a chunk empty only in front of the tail
+      if (node.m_count == 0 && node != m_first)
+        unlink(node);
+      return true;
+    }
+  }
+
+  public boolean contains(int value) {
+    Node node = locate(value);
+
+    while (true) {
+      int v = node.version;
+      if ((v & 1) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      if (node.isMarked()) {
+        // its keys were merged into the predecessor
+        node = locate(value);
+        continue;
+      }
+      Node next = node.getNext();
+      if (!isLast(next) && next.getLowKey() <= value) {
+        // the chunk was split after we located it
+        node = next;
+        continue;
+      }
+      int count = Math.min(node.m_count, node.m_keys.length);
+      boolean result = Arrays.binarySearch(node.m_keys, 0, count, value) >= 0;
+      VarHandle.acquireFence();
+      if (node.version == v)
+        return result;
+    }
+  }
+
+  public int size() {
+    return (int) m_size.sum();
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int totalSize = 0;
+    int totalAdds = 0;
+    int totalRemoves = 0;
+    int previous_value = Integer.MIN_VALUE;
+    boolean first = true;
+
+    Node node = m_first;
+    while (node.getLowKey() < Integer.MAX_VALUE) {
+      assert !node.isMarked() : "chunk " + node.getLowKey() + " is marked but still linked";
+      assert (node.version & 1) == 0 : "chunk " + node.getLowKey() + " is still being written";
+      totalAdds = totalAdds + node.getAdd();
+      totalRemoves = totalRemoves + node.getRemove();
+      int upper = node.getNext().getLowKey();
+      boolean last = isLast(node.getNext());
+      for (int i = 0; i < node.m_count; i++) {
+        int value = node.m_keys[i];
+        assert first || previous_value < value : "list is unordered: " + previous_value + " before " + value;
+        assert node.getLowKey() <= value && (last || value < upper) : value + " is outside of chunk [" + node.getLowKey() + ", " + upper + ")";
+        assert !checker.contains(value) : "list has duplicates: " + value;
+        checker.add(value);
+        previous_value = value;
+        first = false;
+        totalSize++;
+      }
+      node = node.getNext();
+    }
+    assert (totalAdds - totalRemoves) == totalSize : "list has a total size of " + totalSize + " but it should be " + (totalAdds - totalRemoves);
+  }
+
+  private Node locate(int value) {
+    Node node = m_first;
+    Node next = node.getNext();
+    while (!isLast(next) && next.getLowKey() <= value) {
+      node = next;
+      next = node.getNext();
+    }
+    return node;
+  }
+
+  private void insert(Node node, int index, int value) {
+    System.arraycopy(node.m_keys, index, node.m_keys, index + 1, node.m_count - index);
+    node.m_keys[index] = value;
+    node.m_count++;
+  }
+
+  private void split(Node node, int value) {
+    // the upper half moves to a new chunk, published only once it is complete
+    int half = m_chunkSize >> 1;
+    Node upper = new Node(node.m_keys[half], m_chunkSize);
+    System.arraycopy(node.m_keys, half, upper.m_keys, 0, m_chunkSize - half);
+    upper.m_count = m_chunkSize - half;
+    node.m_count = half;
+
+    if (value >= upper.getLowKey())
+      insert(upper, -upper.indexOf(value) - 1, value);
+    else
+      insert(node, -node.indexOf(value) - 1, value);
+
+    upper.setNext(node.getNext());
+    node.setNext(upper);
+  }
+
+  private void merge(Node node) {
+    Node next = node.getNext();
+    if (isLast(next))
+      return;
+
+    // next can only be unlinked by whoever holds the lock of node
+    next.lockNode();
+    try {
+      // an empty chunk takes even a full successor, rather than stay linked
+      if (node.m_count > 0 && node.m_count + next.m_count > m_chunkSize - (m_chunkSize >> 2))
+        return;
+      node.beginWrite();
+      next.beginWrite();
+      try {
+        System.arraycopy(next.m_keys, 0, node.m_keys, node.m_count, next.m_count);
+        node.m_count += next.m_count;
+        node.add += next.getAdd();
+        node.remove += next.getRemove();
+        next.markNode();
+        node.setNext(next.getNext());
+      } finally {
+        next.endWrite();
+        node.endWrite();
+      }
+    } finally {
+      next.unlockNode();
+    }
+  }
+
+  /*
+   * Unlinks an empty chunk, locking its predecessor first like every other
+   * update does. Gives up once the chunk is gone or has keys again.
+   */
+  private void unlink(Node node) {
+    while (true) {
+      Node previous = locate(node.getLowKey() - 1);
+
+      previous.lockNode();
+      node.lockNode();
+      try {
+        if (node.isMarked() || node.m_count > 0)
+          return;
+        if (!previous.isMarked() && previous.getNext() == node) {
+          previous.beginWrite();
+          node.beginWrite();
+          try {
+            previous.add += node.getAdd();
+            previous.remove += node.getRemove();
+            node.markNode();
+            previous.setNext(node.getNext());
+          } finally {
+            node.endWrite();
+            previous.endWrite();
+          }
+          return;
+        }
+      } finally {
+        node.unlockNode();
+        previous.unlockNode();
+      }
+    }
+  }
+
+  private boolean validateLogic(Node node, int value) {
+    Node next = node.getNext();
+    return (!node.isMarked() && (isLast(next) || next.getLowKey() > value));
+  }
+
+  // only the tail sentinel has no successor
+  private static boolean isLast(Node node) {
+    return node.getNext() == null;
+  }
+}
@@ -0,0 +1,334 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Same structure as {@link IntSetLinkedListOptimisticPerNodeLock}, but the
+ * window is validated locally instead of walking again from m_first. Every
+ * node has a version, bumped each time its next field changes, whose lowest
+ * bit is set once the node is removed. The traversal reads the version of
+ * previous before its next field, so if that version is unchanged under the
+ * lock, previous is still in the list and next is still its successor.
+ *
+ * add() only locks previous, since next does not change. contains() takes
+ * no locks at all, like the lazy list.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetLinkedListVersionedPerNodeLock implements IntSet {
+
+  static final int REMOVED = 1;
+  static final int VERSION_INCR = 2;
+
+  public class Node {
+    private final int m_value;
+    private volatile Node m_next;
+    private volatile int version;
+    private NodeLock lock;
+    private int add;
+    private int remove;
+
+    public Node(int value, Node next) {
+      m_value = value;
+      m_next = next;
+      version = 0;
+      lock = m_locks.get();
+      add=0;
+      remove=0;
+    }
+
+    public Node(int value) {
+      this(value, null);
+    }
+
+    public int getValue() {
+      return m_value;
+    }
+
+    public void setNext(Node next) {
+      m_next = next;
+      // bumped after the link, so a reader that sees the new version sees it too
+      version += VERSION_INCR;
+    }
+
+    public Node getNext() {
+      return m_next;
+    }
+
+    public int getVersion() {
+    	return version;
+    }
+
+    public void markRemoved() {
+    	version |= REMOVED;
+    }
+
+    public boolean isRemoved() {
+    	return (version & REMOVED) != 0;
+    }
+
+    public void incAdd() {
+    	add++;
+    }
+
+    public void incAmountAdd(int amount) {
+    	add = add + amount;
+    }
+
+    public void incAmountRemove(int amount) {
+    	remove = remove + amount;
+    }
+
+    public void incRemove() {
+    	remove++;
+    }
+
+    public int getAdd() {
+    	return add;
+    }
+
+    public int getRemove() {
+    	return remove;
+    }
+
+    public void lockNode() {
+    	lock.lock();
+    }
+
+    public void unlockNode() {
+    	lock.unlock();
+    }
+  }
+
+  public class Window {
+    private Node previous;
+    private Node next;
+    private int version;
+  }
+
+  private final Node m_first;
+  private final LongAdder m_size;
+  private final Supplier<NodeLock> m_locks;
+
+  public IntSetLinkedListVersionedPerNodeLock() {
+    this(NodeLock.Reentrant::new);
+  }
+
+  public IntSetLinkedListVersionedPerNodeLock(Supplier<NodeLock> locks) {
+    m_locks = locks;
+    Node min = new Node(Integer.MIN_VALUE);
+    Node max = new Node(Integer.MAX_VALUE);
+    min.setNext(max);
+    m_first = min;
+    m_size = new LongAdder();
+  }
+
+  public boolean add(int value) {
+	Window window = new Window();
+	while(true) {
+		find(m_first, value, window);
+		Node previous = window.previous;
+		Node next = window.next;
+
+		previous.lockNode();
+		try {
+			if(validateLogic(previous, window.version)) {
+				if(value == next.getValue())
+					return false;
+				else {
+					previous.setNext(new Node(value, next));
+					previous.incAdd();
+					m_size.increment();
+					return true;
+				}
+			}
+		} finally {
+			previous.unlockNode();
+		}
+	}
+  }
+
+  public boolean remove(int value) {
+	Window window = new Window();
+	while(true) {
+		find(m_first, value, window);
+		Node previous = window.previous;
+		Node next = window.next;
+
+		previous.lockNode();
+		next.lockNode();
+		try {
+			if(validateLogic(previous, window.version)) {
+				if(value == next.getValue()) {
+					next.markRemoved();
+					previous.incAmountAdd(next.getAdd());
+					previous.incAmountRemove(next.getRemove());
+					previous.setNext(next.getNext());
+					previous.incRemove();
+					m_size.decrement();
+					return true;
+				} else return false;
+			}
+		} finally {
+			previous.unlockNode();
+			next.unlockNode();
+		}
+	}
+  }
+
+  public boolean contains(int value) {
+	Node next = m_first.getNext();
+	while (next.getValue() < value)
+		next = next.getNext();
+
+	return (next.getValue()==value && !next.isRemoved());
+  }
+
+  public int addAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	Window window = new Window();
+
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			find(start, value, window);
+			Node previous = window.previous;
+			Node next = window.next;
+
+			previous.lockNode();
+			try {
+				if(validateLogic(previous, window.version)) {
+					boolean result = value != next.getValue();
+					if(result) {
+						Node node = new Node(value, next);
+						previous.setNext(node);
+						previous.incAdd();
+						m_size.increment();
+						start = node;
+						count++;
+					} else start = previous;
+					if (results != null) results[i] = result;
+					break;
+				}
+				//a janela anterior pode ja nao estar na lista
+				start = m_first;
+			} finally {
+				previous.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int removeAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node start = m_first;
+	Window window = new Window();
+
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while(true) {
+			find(start, value, window);
+			Node previous = window.previous;
+			Node next = window.next;
+
+			previous.lockNode();
+			next.lockNode();
+			try {
+				if(validateLogic(previous, window.version)) {
+					boolean result = value == next.getValue();
+					if(result) {
+						next.markRemoved();
+						previous.incAmountAdd(next.getAdd());
+						previous.incAmountRemove(next.getRemove());
+						previous.setNext(next.getNext());
+						previous.incRemove();
+						m_size.decrement();
+						count++;
+					}
+					start = previous;
+					if (results != null) results[i] = result;
+					break;
+				}
+				//a janela anterior pode ja nao estar na lista
+				start = m_first;
+			} finally {
+				previous.unlockNode();
+				next.unlockNode();
+			}
+		}
+	}
+	return count;
+  }
+
+  public int containsAll(int[] values, boolean[] results) {
+	int count = 0;
+	Node next = m_first.getNext();
+	for (int i = 0; i < values.length; i++) {
+		int value = values[i];
+		while (next.getValue() < value)
+			next = next.getNext();
+		boolean result = next.getValue()==value && !next.isRemoved();
+		if(result) count++;
+		if (results != null) results[i] = result;
+	}
+	return count;
+  }
+
+  public int size() {
+    return (int) m_size.sum();
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int totalSize=2;
+    int initialSize=2;
+	int totalAdds=m_first.getAdd();
+	int totalRemoves=m_first.getRemove();
+    int previous_value = m_first.getValue();
+    Node node = m_first.getNext();
+    int value = node.getValue();
+    while (value < Integer.MAX_VALUE) {
+    	totalAdds= totalAdds + node.getAdd();
+    	totalRemoves = totalRemoves + node.getRemove();
+      assert !node.isRemoved() : "node " + value + " is removed but still linked";
+      assert previous_value < value : "list is unordered: " + previous_value + " before " + value;
+      assert !checker.contains(value) : "list has duplicates: " + value;
+      checker.add(value);
+      previous_value = value;
+      node = node.getNext();
+      value = node.getValue();
+      totalSize++;
+    }
+    totalAdds = totalAdds + node.getAdd();
+    totalRemoves = totalRemoves + node.getRemove();
+    assert (initialSize + totalAdds - totalRemoves) == totalSize : "list has a total size of " +totalSize+" but it should be "+ (initialSize + totalAdds - totalRemoves);
+  }
+
+  /*
+   * Finds the window of value from start, with the version of previous read
+   * before its next field.
+   */
+  private void find(Node start, int value, Window window) {
+	Node previous = start;
+	int version = previous.getVersion();
+	Node next = previous.getNext();
+	while (next.getValue() < value) {
+		previous = next;
+		version = previous.getVersion();
+		next = previous.getNext();
+	}
+	window.previous = previous;
+	window.next = next;
+	window.version = version;
+  }
+
+  // previous must be locked
+  private boolean validateLogic(Node previous, int version) {
+	  return (version & REMOVED) == 0 && previous.getVersion() == version;
+  }
+}
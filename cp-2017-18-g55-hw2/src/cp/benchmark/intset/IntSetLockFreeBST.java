@@ -0,0 +1,241 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free external binary search tree (Natarajan &amp; Mittal). Values are
+ * in the leaves, and internal nodes only route: smaller keys go left, the
+ * others go right. Edges carry two bits in their stamp. A remove flags the
+ * edge to its leaf (the linearization point), then tags the edge to the
+ * sibling so that it cannot change, and swings the edge above the parent to
+ * the sibling, removing the parent and the leaf at once. Any thread that
+ * runs into a flagged or tagged edge helps to finish the removal.
+ *
+ * Three sentinel keys, all above Integer.MAX_VALUE, keep the two top nodes
+ * in place, so every int value can be stored.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetLockFreeBST implements IntSet {
+
+  static final int FLAG = 1;
+  static final int TAG = 2;
+
+  static final long INF0 = Integer.MAX_VALUE + 1L;
+  static final long INF1 = Integer.MAX_VALUE + 2L;
+  static final long INF2 = Integer.MAX_VALUE + 3L;
+
+  public class Node {
+    private final long m_key;
+    // both null for a leaf
+    private final AtomicStampedReference<Node> m_left;
+    private final AtomicStampedReference<Node> m_right;
+
+    public Node(long key) {
+      m_key = key;
+      m_left = null;
+      m_right = null;
+    }
+
+    public Node(long key, Node left, Node right) {
+      m_key = key;
+      m_left = new AtomicStampedReference<Node>(left, 0);
+      m_right = new AtomicStampedReference<Node>(right, 0);
+    }
+
+    public long getKey() {
+      return m_key;
+    }
+
+    public boolean isLeaf() {
+      return m_left == null;
+    }
+
+    public AtomicStampedReference<Node> getChild(long key) {
+      return key < m_key ? m_left : m_right;
+    }
+  }
+
+  public class SeekRecord {
+    private Node m_ancestor;
+    private Node m_successor;
+    private Node m_parent;
+    private Node m_leaf;
+    private final int[] m_stamp = new int[1];
+  }
+
+  private final Node m_root;
+  private final Node m_s;
+  private LongAdder adds;
+  private LongAdder rems;
+
+  public IntSetLockFreeBST() {
+    m_s = new Node(INF1, new Node(INF0), new Node(INF1));
+    m_root = new Node(INF2, m_s, new Node(INF2));
+    adds = new LongAdder();
+    rems = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    SeekRecord record = new SeekRecord();
+    Node node = new Node(value);
+    while (true) {
+      seek(value, record);
+      Node leaf = record.m_leaf;
+      if (leaf.getKey() == value)
+        return false;
+
+      Node parent = record.m_parent;
+      AtomicStampedReference<Node> child = parent.getChild(value);
+      Node internal = value < leaf.getKey() ? new Node(leaf.getKey(), node, leaf) : new Node(value, leaf, node);
+      if (child.compareAndSet(leaf, internal, 0, 0)) {
+        adds.increment();
+        return true;
+      }
+
+      // help the removal that is holding the edge
+      int[] stamp = record.m_stamp;
+      Node address = child.get(stamp);
+      if (address == leaf && stamp[0] != 0)
+        cleanup(value, record);
+    }
+  }
+
+  public boolean remove(int value) {
+    SeekRecord record = new SeekRecord();
+    Node leaf = null;
+    boolean injected = false;
+    while (true) {
+      seek(value, record);
+      if (!injected) {
+        leaf = record.m_leaf;
+        if (leaf.getKey() != value)
+          return false;
+        AtomicStampedReference<Node> child = record.m_parent.getChild(value);
+        if (child.compareAndSet(leaf, leaf, 0, FLAG)) {
+          // the leaf is logically removed, now unlink it
+          injected = true;
+          rems.increment();
+          if (cleanup(value, record))
+            return true;
+        } else {
+          int[] stamp = record.m_stamp;
+          Node address = child.get(stamp);
+          if (address == leaf && stamp[0] != 0)
+            cleanup(value, record);
+        }
+      } else {
+        // someone else finished the job for us
+        if (record.m_leaf != leaf)
+          return true;
+        if (cleanup(value, record))
+          return true;
+      }
+    }
+  }
+
+  public boolean contains(int value) {
+    SeekRecord record = new SeekRecord();
+    seek(value, record);
+    return record.m_leaf.getKey() == value;
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
+  }
+
+  public void validate() {
+    int[] totalSize = new int[1];
+    validate(m_root, Long.MIN_VALUE, Long.MAX_VALUE, totalSize);
+    assert (adds.sum() - rems.sum()) == totalSize[0] : "tree has a total size of " + totalSize[0] + " but it should be " + (adds.sum() - rems.sum());
+  }
+
+  private void validate(Node node, long lower, long upper, int[] totalSize) {
+    long key = node.getKey();
+    assert lower <= key && key <= upper : "tree is unordered: " + key + " is outside of [" + lower + ", " + upper + "]";
+    if (node.isLeaf()) {
+      if (key < INF0)
+        totalSize[0]++;
+      return;
+    }
+    int[] stamp = new int[1];
+    Node left = node.m_left.get(stamp);
+    assert stamp[0] == 0 : "left edge of " + key + " is still flagged or tagged";
+    Node right = node.m_right.get(stamp);
+    assert stamp[0] == 0 : "right edge of " + key + " is still flagged or tagged";
+    // keys on the left are strictly smaller than the routing key
+    validate(left, lower, key - 1, totalSize);
+    validate(right, key, upper, totalSize);
+  }
+
+  private void seek(long key, SeekRecord record) {
+    int[] stamp = record.m_stamp;
+    Node ancestor = m_root;
+    Node successor = m_s;
+    Node parent = m_s;
+    Node leaf = m_s.m_left.get(stamp);
+    int parentStamp = stamp[0];
+    Node current = leaf.isLeaf() ? null : leaf.getChild(key).get(stamp);
+    int currentStamp = stamp[0];
+
+    while (current != null) {
+      // the last untagged edge on the path is where a removal swings
+      if ((parentStamp & TAG) == 0) {
+        ancestor = parent;
+        successor = leaf;
+      }
+      parent = leaf;
+      leaf = current;
+      parentStamp = currentStamp;
+      if (current.isLeaf())
+        current = null;
+      else {
+        current = current.getChild(key).get(stamp);
+        currentStamp = stamp[0];
+      }
+    }
+
+    record.m_ancestor = ancestor;
+    record.m_successor = successor;
+    record.m_parent = parent;
+    record.m_leaf = leaf;
+  }
+
+  private boolean cleanup(long key, SeekRecord record) {
+    Node ancestor = record.m_ancestor;
+    Node successor = record.m_successor;
+    Node parent = record.m_parent;
+    int[] stamp = new int[1];
+
+    AtomicStampedReference<Node> successorEdge = ancestor.getChild(key);
+    AtomicStampedReference<Node> childEdge;
+    AtomicStampedReference<Node> siblingEdge;
+    if (key < parent.getKey()) {
+      childEdge = parent.m_left;
+      siblingEdge = parent.m_right;
+    } else {
+      childEdge = parent.m_right;
+      siblingEdge = parent.m_left;
+    }
+    childEdge.get(stamp);
+    if ((stamp[0] & FLAG) == 0) {
+      // our leaf is not the one being removed, its sibling is
+      siblingEdge = childEdge;
+    }
+
+    // tag the sibling edge, so that it cannot change any more
+    Node sibling;
+    while (true) {
+      sibling = siblingEdge.get(stamp);
+      if ((stamp[0] & TAG) != 0 || siblingEdge.compareAndSet(sibling, sibling, stamp[0], stamp[0] | TAG))
+        break;
+    }
+    sibling = siblingEdge.get(stamp);
+
+    // a flagged sibling stays flagged, its removal is still pending
+    return successorEdge.compareAndSet(successor, sibling, 0, stamp[0] & FLAG);
+  }
+}
@@ -0,0 +1,242 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Open-addressing hash set over a flat array of int slots, with linear
+ * probing, CAS insertion and tombstone deletion. Elements are stored in the
+ * slots themselves, so there is no per-element object.
+ *
+ * A value is only ever inserted into an EMPTY slot, and slots never go back
+ * to EMPTY, so two adds of the same value always race for the same slot. When
+ * the table fills up, every thread that notices it helps to freeze all slots
+ * (no update can succeed on a frozen slot), then copy the live values into a
+ * new table that drops the tombstones, before switching over.
+ *
+ * Only values in [0, Integer.MAX_VALUE - 3) can be stored.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetOpenAddressing implements IntSet {
+
+  static final int EMPTY = Integer.MIN_VALUE;
+  static final int TOMBSTONE = Integer.MIN_VALUE + 1;
+  static final int MOVED = Integer.MIN_VALUE + 2;
+  static final int COPYING = Integer.MIN_VALUE + 3;
+  static final int MIN_CAPACITY = 64;
+
+  /*
+   * Slot encoding: a live value v is stored as v (>= 0) and, once frozen, as
+   * ~v (< 0). EMPTY and TOMBSTONE are frozen straight to MOVED. A frozen live
+   * value goes to COPYING while one thread inserts it into the next table, and
+   * then to MOVED.
+   */
+
+  public class Table {
+    private final AtomicIntegerArray m_slots;
+    private final int m_shift;
+    private final AtomicInteger m_used;
+    private final AtomicReference<Table> m_next;
+
+    public Table(int capacity) {
+      m_slots = new AtomicIntegerArray(capacity);
+      for (int i = 0; i < capacity; i++)
+        m_slots.set(i, EMPTY);
+      m_shift = 32 - Integer.numberOfTrailingZeros(capacity);
+      m_used = new AtomicInteger();
+      m_next = new AtomicReference<Table>(null);
+    }
+
+    public int getCapacity() {
+      return m_slots.length();
+    }
+
+    public int indexOf(int value) {
+      // Fibonacci hashing: the top bits of the product are well mixed
+      return (value * 0x9E3779B9) >>> m_shift;
+    }
+  }
+
+  private final AtomicReference<Table> m_table;
+  private LongAdder adds;
+  private LongAdder rems;
+
+  public IntSetOpenAddressing() {
+    this(MIN_CAPACITY);
+  }
+
+  public IntSetOpenAddressing(int capacity) {
+    m_table = new AtomicReference<Table>(new Table(Math.max(MIN_CAPACITY, Integer.highestOneBit(capacity - 1) << 1)));
+    adds = new LongAdder();
+    rems = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    checkValue(value);
+    retry: while (true) {
+      Table table = m_table.get();
+      int capacity = table.getCapacity();
+      int index = table.indexOf(value);
+      for (int probes = 0; probes < capacity; probes++) {
+        int slot = table.m_slots.get(index);
+        while (slot == EMPTY) {
+          if (table.m_slots.compareAndSet(index, EMPTY, value)) {
+            adds.increment();
+            if (table.m_used.incrementAndGet() > capacity - (capacity >> 2))
+              resize(table);
+            return true;
+          }
+          slot = table.m_slots.get(index);
+        }
+        if (slot == value)
+          return false;
+        if (isFrozen(slot)) {
+          resize(table);
+          continue retry;
+        }
+        index = (index + 1) & (capacity - 1);
+      }
+      resize(table);
+    }
+  }
+
+  public boolean remove(int value) {
+    checkValue(value);
+    retry: while (true) {
+      Table table = m_table.get();
+      int capacity = table.getCapacity();
+      int index = table.indexOf(value);
+      for (int probes = 0; probes < capacity; probes++) {
+        int slot = table.m_slots.get(index);
+        while (slot == value) {
+          if (table.m_slots.compareAndSet(index, value, TOMBSTONE)) {
+            rems.increment();
+            return true;
+          }
+          slot = table.m_slots.get(index);
+        }
+        if (slot == EMPTY)
+          return false;
+        if (isFrozen(slot)) {
+          resize(table);
+          continue retry;
+        }
+        index = (index + 1) & (capacity - 1);
+      }
+      return false;
+    }
+  }
+
+  public boolean contains(int value) {
+    checkValue(value);
+    retry: while (true) {
+      Table table = m_table.get();
+      int capacity = table.getCapacity();
+      int index = table.indexOf(value);
+      for (int probes = 0; probes < capacity; probes++) {
+        int slot = table.m_slots.get(index);
+        if (slot == value)
+          return true;
+        if (slot == EMPTY)
+          return false;
+        if (isFrozen(slot)) {
+          resize(table);
+          continue retry;
+        }
+        index = (index + 1) & (capacity - 1);
+      }
+      return false;
+    }
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    Table table = m_table.get();
+    int totalSize = 0;
+    int used = 0;
+
+    assert table.m_next.get() == null : "table is still being resized";
+    for (int i = 0; i < table.getCapacity(); i++) {
+      int slot = table.m_slots.get(i);
+      assert !isFrozen(slot) : "slot " + i + " is frozen";
+      if (slot != EMPTY)
+        used++;
+      if (slot >= 0) {
+        assert !checker.contains(slot) : "table has duplicates: " + slot;
+        checker.add(slot);
+        assert contains(slot) : slot + " is not reachable from its home slot";
+        totalSize++;
+      }
+    }
+    assert used == table.m_used.get() : "table has " + used + " used slots but it should be " + table.m_used.get();
+    assert (adds.sum() - rems.sum()) == totalSize : "set has a total size of " + totalSize + " but it should be " + (adds.sum() - rems.sum());
+  }
+
+  private void resize(Table table) {
+    int capacity = table.getCapacity();
+
+    // 1. freeze every slot, so that no update can succeed on this table
+    int live = 0;
+    for (int i = 0; i < capacity; i++) {
+      int slot = table.m_slots.get(i);
+      while (!isFrozen(slot)) {
+        int frozen = (slot == EMPTY || slot == TOMBSTONE) ? MOVED : ~slot;
+        if (table.m_slots.compareAndSet(i, slot, frozen))
+          slot = frozen;
+        else slot = table.m_slots.get(i);
+      }
+      if (slot != MOVED)
+        live++;
+    }
+
+    // 2. agree on the next table; it only grows when live values need it
+    if (table.m_next.get() == null) {
+      int next_capacity = (live << 2) > capacity ? capacity << 1 : capacity;
+      table.m_next.compareAndSet(null, new Table(next_capacity));
+    }
+    Table next = table.m_next.get();
+
+    // 3. copy each live value exactly once, so that no slow helper can bring
+    //    a value back after it has been removed from the next table
+    for (int i = 0; i < capacity; i++) {
+      int slot = table.m_slots.get(i);
+      while (slot != MOVED) {
+        if (slot != COPYING && table.m_slots.compareAndSet(i, slot, COPYING)) {
+          copy(next, ~slot);
+          table.m_slots.set(i, MOVED);
+          break;
+        }
+        Thread.yield();
+        slot = table.m_slots.get(i);
+      }
+    }
+
+    m_table.compareAndSet(table, next);
+  }
+
+  private void copy(Table table, int value) {
+    // no other thread updates the next table until the copy is complete
+    int index = table.indexOf(value);
+    while (!table.m_slots.compareAndSet(index, EMPTY, value))
+      index = (index + 1) & (table.getCapacity() - 1);
+    table.m_used.getAndIncrement();
+  }
+
+  private static boolean isFrozen(int slot) {
+    return slot < 0 && slot != EMPTY && slot != TOMBSTONE;
+  }
+
+  private static void checkValue(int value) {
+    if (value < 0 || value >= Integer.MAX_VALUE - 3)
+      throw new IllegalArgumentException("value out of range: " + value);
+  }
+}
@@ -0,0 +1,685 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tree counterpart of {@link IntSetLinkedListOptimisticPerNodeLock}: a
+ * relaxed-balance AVL tree after Bronson, Casper, Chafi &amp; Olukotun.
+ *
+ * Readers take no locks. They descend hand over hand, reading the version of
+ * each node before following a child link and checking that it did not move
+ * after reaching the child, so only the two nodes at hand are validated
+ * instead of re-traversing from the root. A rotation bumps the version of
+ * the nodes whose key range shrinks, and searches that crossed them retry
+ * from the last node that is still valid.
+ *
+ * Writers lock the node they change, and its parent when a link changes.
+ * A remove of a node with two children just clears it, leaving a routing
+ * node that is unlinked later, once it has at most one child. Heights are
+ * repaired and rotations done bottom-up after each update.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetOptimisticAVL implements IntSet {
+
+  static final long UNLINKED = 1L;
+  static final long SHRINKING = 2L;
+  static final long SHRINK_COUNT_INCR = 4L;
+  static final int SPIN_COUNT = 100;
+
+  // results of the attempt methods
+  static final int NOT_FOUND = 0;
+  static final int FOUND = 1;
+  static final int RETRY = 2;
+
+  // results of nodeCondition, heights are never negative
+  static final int UNLINK_REQUIRED = -1;
+  static final int REBALANCE_REQUIRED = -2;
+  static final int NOTHING_REQUIRED = -3;
+
+  public class Node {
+    private final int m_key;
+    private volatile boolean m_present;
+    private volatile int m_height;
+    private volatile long m_version;
+    private volatile Node m_parent;
+    private volatile Node m_left;
+    private volatile Node m_right;
+
+    public Node(int key, boolean present, int height, Node parent) {
+      m_key = key;
+      m_present = present;
+      m_height = height;
+      m_version = 0;
+      m_parent = parent;
+    }
+
+    public int getKey() {
+      return m_key;
+    }
+
+    public Node getChild(int dir) {
+      return dir < 0 ? m_left : m_right;
+    }
+
+    public void setChild(int dir, Node child) {
+      if (dir < 0) m_left = child;
+      else m_right = child;
+    }
+  }
+
+  // its right child is the root of the tree
+  private final Node m_holder;
+  private LongAdder adds;
+  private LongAdder rems;
+
+  public IntSetOptimisticAVL() {
+    m_holder = new Node(0, false, 1, null);
+    adds = new LongAdder();
+    rems = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    while (true) {
+      Node right = m_holder.m_right;
+      if (right == null) {
+        synchronized (m_holder) {
+          if (m_holder.m_right == null) {
+            m_holder.m_right = new Node(value, true, 1, m_holder);
+            m_holder.m_height = 2;
+            adds.increment();
+            return true;
+          }
+        }
+      } else {
+        long version = right.m_version;
+        if (isShrinkingOrUnlinked(version)) {
+          waitUntilNotChanging(right);
+        } else if (right == m_holder.m_right) {
+          int result = attemptAdd(value, right, version);
+          if (result != RETRY)
+            return result == FOUND;
+        }
+      }
+    }
+  }
+
+  public boolean remove(int value) {
+    while (true) {
+      Node right = m_holder.m_right;
+      if (right == null)
+        return false;
+      long version = right.m_version;
+      if (isShrinkingOrUnlinked(version)) {
+        waitUntilNotChanging(right);
+      } else if (right == m_holder.m_right) {
+        int result = attemptRemove(value, m_holder, right, version);
+        if (result != RETRY)
+          return result == FOUND;
+      }
+    }
+  }
+
+  public boolean contains(int value) {
+    while (true) {
+      Node right = m_holder.m_right;
+      if (right == null)
+        return false;
+      int dir = Integer.compare(value, right.getKey());
+      if (dir == 0)
+        return right.m_present;
+      long version = right.m_version;
+      if (isShrinkingOrUnlinked(version)) {
+        waitUntilNotChanging(right);
+      } else if (right == m_holder.m_right) {
+        int result = attemptGet(value, right, dir, version);
+        if (result != RETRY)
+          return result == FOUND;
+      }
+    }
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
+  }
+
+  public void validate() {
+    int[] totalSize = new int[1];
+    validate(m_holder.m_right, m_holder, Integer.MIN_VALUE, Integer.MAX_VALUE, totalSize);
+    assert (adds.sum() - rems.sum()) == totalSize[0] : "tree has a total size of " + totalSize[0] + " but it should be " + (adds.sum() - rems.sum());
+  }
+
+  private int validate(Node node, Node parent, long lower, long upper, int[] totalSize) {
+    if (node == null)
+      return 0;
+    int key = node.getKey();
+    assert lower <= key && key <= upper : "tree is unordered: " + key + " is outside of [" + lower + ", " + upper + "]";
+    assert node.m_parent == parent : "node " + key + " has a stale parent link";
+    assert !isShrinkingOrUnlinked(node.m_version) : "node " + key + " is unlinked or still changing";
+    assert node.m_present || (node.m_left != null && node.m_right != null) : "routing node " + key + " should have been unlinked";
+    if (node.m_present)
+      totalSize[0]++;
+    int hL = validate(node.m_left, node, lower, key - 1L, totalSize);
+    int hR = validate(node.m_right, node, key + 1L, upper, totalSize);
+    assert node.m_height == 1 + Math.max(hL, hR) : "node " + key + " has height " + node.m_height + " but it should be " + (1 + Math.max(hL, hR));
+    assert Math.abs(hL - hR) <= 1 : "node " + key + " is unbalanced: " + hL + " vs " + hR;
+    return node.m_height;
+  }
+
+  private int attemptGet(int value, Node node, int dir, long version) {
+    while (true) {
+      Node child = node.getChild(dir);
+      if (child == null) {
+        if (node.m_version != version)
+          return RETRY;
+        return NOT_FOUND;
+      }
+
+      int childDir = Integer.compare(value, child.getKey());
+      if (childDir == 0)
+        return child.m_present ? FOUND : NOT_FOUND;
+
+      // read the version of the child before checking that we did not
+      // leave the key range of the node to get to it
+      long childVersion = child.m_version;
+      if (isShrinkingOrUnlinked(childVersion)) {
+        waitUntilNotChanging(child);
+        if (node.m_version != version)
+          return RETRY;
+      } else if (child != node.getChild(dir)) {
+        if (node.m_version != version)
+          return RETRY;
+      } else {
+        if (node.m_version != version)
+          return RETRY;
+        int result = attemptGet(value, child, childDir, childVersion);
+        if (result != RETRY)
+          return result;
+        // the child moved under us, but the node is still valid
+      }
+    }
+  }
+
+  private int attemptAdd(int value, Node node, long version) {
+    int dir = Integer.compare(value, node.getKey());
+    if (dir == 0)
+      return attemptNodeAdd(node);
+
+    while (true) {
+      Node child = node.getChild(dir);
+      if (node.m_version != version)
+        return RETRY;
+
+      if (child == null) {
+        Node damaged = null;
+        synchronized (node) {
+          if (node.m_version != version)
+            return RETRY;
+          if (node.getChild(dir) == null) {
+            node.setChild(dir, new Node(value, true, 1, node));
+            damaged = node;
+          }
+        }
+        if (damaged != null) {
+          adds.increment();
+          fixHeightAndRebalance(damaged);
+          return FOUND;
+        }
+        // someone else inserted there, retry with the same node
+      } else {
+        long childVersion = child.m_version;
+        if (isShrinkingOrUnlinked(childVersion)) {
+          waitUntilNotChanging(child);
+        } else if (child == node.getChild(dir)) {
+          if (node.m_version != version)
+            return RETRY;
+          int result = attemptAdd(value, child, childVersion);
+          if (result != RETRY)
+            return result;
+        }
+      }
+    }
+  }
+
+  private int attemptNodeAdd(Node node) {
+    synchronized (node) {
+      if (isUnlinked(node.m_version))
+        return RETRY;
+      if (node.m_present)
+        return NOT_FOUND;
+      // revive a routing node
+      node.m_present = true;
+      adds.increment();
+      return FOUND;
+    }
+  }
+
+  private int attemptRemove(int value, Node parent, Node node, long version) {
+    int dir = Integer.compare(value, node.getKey());
+    if (dir == 0)
+      return attemptNodeRemove(parent, node);
+
+    while (true) {
+      Node child = node.getChild(dir);
+      if (node.m_version != version)
+        return RETRY;
+
+      if (child == null)
+        return NOT_FOUND;
+      long childVersion = child.m_version;
+      if (isShrinkingOrUnlinked(childVersion)) {
+        waitUntilNotChanging(child);
+      } else if (child == node.getChild(dir)) {
+        if (node.m_version != version)
+          return RETRY;
+        int result = attemptRemove(value, node, child, childVersion);
+        if (result != RETRY)
+          return result;
+      }
+    }
+  }
+
+  private int attemptNodeRemove(Node parent, Node node) {
+    if (!node.m_present)
+      return NOT_FOUND;
+
+    if (node.m_left == null || node.m_right == null) {
+      // the node can be unlinked, which also takes the lock of its parent
+      Node damaged;
+      synchronized (parent) {
+        if (isUnlinked(parent.m_version) || node.m_parent != parent)
+          return RETRY;
+        synchronized (node) {
+          if (!node.m_present)
+            return NOT_FOUND;
+          if (!attemptUnlink(parent, node))
+            return RETRY;
+        }
+        damaged = fixHeight(parent);
+      }
+      rems.increment();
+      fixHeightAndRebalance(damaged);
+      return FOUND;
+    }
+
+    synchronized (node) {
+      if (isUnlinked(node.m_version))
+        return RETRY;
+      if (!node.m_present)
+        return NOT_FOUND;
+      // it lost a child meanwhile, unlink it instead
+      if (node.m_left == null || node.m_right == null)
+        return RETRY;
+      node.m_present = false;
+      rems.increment();
+      return FOUND;
+    }
+  }
+
+  // parent and node must be locked
+  private boolean attemptUnlink(Node parent, Node node) {
+    Node parentL = parent.m_left;
+    Node parentR = parent.m_right;
+    if (parentL != node && parentR != node)
+      return false;
+
+    Node left = node.m_left;
+    Node right = node.m_right;
+    if (left != null && right != null)
+      return false;
+
+    Node splice = left != null ? left : right;
+    if (parentL == node) parent.m_left = splice;
+    else parent.m_right = splice;
+    if (splice != null)
+      splice.m_parent = parent;
+
+    node.m_version = UNLINKED;
+    node.m_present = false;
+    return true;
+  }
+
+  private void waitUntilNotChanging(Node node) {
+    long version = node.m_version;
+    if ((version & SHRINKING) != 0) {
+      for (int i = 0; i < SPIN_COUNT; i++) {
+        if (node.m_version != version)
+          return;
+        Thread.onSpinWait();
+      }
+      // the rotation holds the lock of the node until it is done
+      synchronized (node) {
+      }
+    }
+  }
+
+  /*
+   * Rebalancing, as in the paper. The _nl methods expect the nodes they
+   * change to be locked, and return the next damaged node that the caller is
+   * responsible for, or null.
+   */
+
+  private static int height(Node node) {
+    return node == null ? 0 : node.m_height;
+  }
+
+  private int nodeCondition(Node node) {
+    Node nL = node.m_left;
+    Node nR = node.m_right;
+    if ((nL == null || nR == null) && !node.m_present)
+      return UNLINK_REQUIRED;
+
+    // not atomic, but whoever changes a node is responsible for fixing it
+    int hN = node.m_height;
+    int hL0 = height(nL);
+    int hR0 = height(nR);
+    int hNRepl = 1 + Math.max(hL0, hR0);
+    int bal = hL0 - hR0;
+    if (bal < -1 || bal > 1)
+      return REBALANCE_REQUIRED;
+    return hN != hNRepl ? hNRepl : NOTHING_REQUIRED;
+  }
+
+  private void fixHeightAndRebalance(Node node) {
+    while (node != null && node.m_parent != null) {
+      int condition = nodeCondition(node);
+      if (condition == NOTHING_REQUIRED || isUnlinked(node.m_version))
+        return;
+
+      if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+        synchronized (node) {
+          node = fixHeight(node);
+        }
+      } else {
+        Node nParent = node.m_parent;
+        synchronized (nParent) {
+          if (!isUnlinked(nParent.m_version) && node.m_parent == nParent) {
+            synchronized (node) {
+              node = rebalance_nl(nParent, node);
+            }
+          }
+          // else retry with the new parent
+        }
+      }
+    }
+  }
+
+  // node must be locked
+  private Node fixHeight(Node node) {
+    int c = nodeCondition(node);
+    switch (c) {
+      case REBALANCE_REQUIRED:
+      case UNLINK_REQUIRED:
+        return node;
+      case NOTHING_REQUIRED:
+        return null;
+      default:
+        node.m_height = c;
+        // the parent is now damaged
+        return node.m_parent;
+    }
+  }
+
+  private Node rebalance_nl(Node nParent, Node n) {
+    Node nL = n.m_left;
+    Node nR = n.m_right;
+
+    if ((nL == null || nR == null) && !n.m_present) {
+      if (attemptUnlink(nParent, n))
+        return fixHeight(nParent);
+      return n;
+    }
+
+    int hN = n.m_height;
+    int hL0 = height(nL);
+    int hR0 = height(nR);
+    int hNRepl = 1 + Math.max(hL0, hR0);
+    int bal = hL0 - hR0;
+
+    if (bal > 1) {
+      return rebalanceToRight_nl(nParent, n, nL, hR0);
+    } else if (bal < -1) {
+      return rebalanceToLeft_nl(nParent, n, nR, hL0);
+    } else if (hNRepl != hN) {
+      n.m_height = hNRepl;
+      return fixHeight(nParent);
+    } else {
+      return null;
+    }
+  }
+
+  private Node rebalanceToRight_nl(Node nParent, Node n, Node nL, int hR0) {
+    synchronized (nL) {
+      int hL = nL.m_height;
+      if (hL - hR0 <= 1)
+        return n;
+
+      Node nLR = nL.m_right;
+      int hLL0 = height(nL.m_left);
+      int hLR0 = height(nLR);
+      if (hLL0 >= hLR0)
+        return rotateRight_nl(nParent, n, nL, hR0, hLL0, nLR, hLR0);
+
+      synchronized (nLR) {
+        int hLR = nLR.m_height;
+        if (hLL0 >= hLR)
+          return rotateRight_nl(nParent, n, nL, hR0, hLL0, nLR, hLR);
+
+        // a double rotation, unless nL would be left damaged by it
+        int hLRL = height(nLR.m_left);
+        int b = hLL0 - hLRL;
+        if (b >= -1 && b <= 1 && !((hLL0 == 0 || hLRL == 0) && !nL.m_present))
+          return rotateRightOverLeft_nl(nParent, n, nL, hR0, hLL0, nLR, hLRL);
+      }
+      // fix nL first, n will be rebalanced later if it still has to be
+      return rebalanceToLeft_nl(n, nL, nLR, hLL0);
+    }
+  }
+
+  private Node rebalanceToLeft_nl(Node nParent, Node n, Node nR, int hL0) {
+    synchronized (nR) {
+      int hR = nR.m_height;
+      if (hL0 - hR >= -1)
+        return n;
+
+      Node nRL = nR.m_left;
+      int hRL0 = height(nRL);
+      int hRR0 = height(nR.m_right);
+      if (hRR0 >= hRL0)
+        return rotateLeft_nl(nParent, n, hL0, nR, nRL, hRL0, hRR0);
+
+      synchronized (nRL) {
+        int hRL = nRL.m_height;
+        if (hRR0 >= hRL)
+          return rotateLeft_nl(nParent, n, hL0, nR, nRL, hRL, hRR0);
+
+        int hRLR = height(nRL.m_right);
+        int b = hRR0 - hRLR;
+        if (b >= -1 && b <= 1 && !((hRR0 == 0 || hRLR == 0) && !nR.m_present))
+          return rotateLeftOverRight_nl(nParent, n, hL0, nR, nRL, hRR0, hRLR);
+      }
+      return rebalanceToRight_nl(n, nR, nRL, hRR0);
+    }
+  }
+
+  private Node rotateRight_nl(Node nParent, Node n, Node nL, int hR, int hLL, Node nLR, int hLR) {
+    long version = n.m_version;
+    Node nPL = nParent.m_left;
+    // n moves down and loses the key range of nL
+    n.m_version = version | SHRINKING;
+
+    n.m_left = nLR;
+    if (nLR != null)
+      nLR.m_parent = n;
+
+    nL.m_right = n;
+    n.m_parent = nL;
+
+    if (nPL == n) nParent.m_left = nL;
+    else nParent.m_right = nL;
+    nL.m_parent = nParent;
+
+    int hNRepl = 1 + Math.max(hLR, hR);
+    n.m_height = hNRepl;
+    nL.m_height = 1 + Math.max(hLL, hNRepl);
+
+    n.m_version = version + SHRINK_COUNT_INCR;
+
+    // n is the deepest damaged node, then nL, then nParent
+    int balN = hLR - hR;
+    if (balN < -1 || balN > 1)
+      return n;
+    if ((nLR == null || hR == 0) && !n.m_present)
+      return n;
+    int balL = hLL - hNRepl;
+    if (balL < -1 || balL > 1)
+      return nL;
+    if (hLL == 0 && !nL.m_present)
+      return nL;
+    return fixHeight(nParent);
+  }
+
+  private Node rotateLeft_nl(Node nParent, Node n, int hL, Node nR, Node nRL, int hRL, int hRR) {
+    long version = n.m_version;
+    Node nPL = nParent.m_left;
+    n.m_version = version | SHRINKING;
+
+    n.m_right = nRL;
+    if (nRL != null)
+      nRL.m_parent = n;
+
+    nR.m_left = n;
+    n.m_parent = nR;
+
+    if (nPL == n) nParent.m_left = nR;
+    else nParent.m_right = nR;
+    nR.m_parent = nParent;
+
+    int hNRepl = 1 + Math.max(hL, hRL);
+    n.m_height = hNRepl;
+    nR.m_height = 1 + Math.max(hNRepl, hRR);
+
+    n.m_version = version + SHRINK_COUNT_INCR;
+
+    int balN = hRL - hL;
+    if (balN < -1 || balN > 1)
+      return n;
+    if ((nRL == null || hL == 0) && !n.m_present)
+      return n;
+    int balR = hRR - hNRepl;
+    if (balR < -1 || balR > 1)
+      return nR;
+    if (hRR == 0 && !nR.m_present)
+      return nR;
+    return fixHeight(nParent);
+  }
+
+  private Node rotateRightOverLeft_nl(Node nParent, Node n, Node nL, int hR, int hLL, Node nLR, int hLRL) {
+    long version = n.m_version;
+    long leftVersion = nL.m_version;
+
+    Node nPL = nParent.m_left;
+    Node nLRL = nLR.m_left;
+    Node nLRR = nLR.m_right;
+    int hLRR = height(nLRR);
+
+    // both n and nL move down below nLR
+    n.m_version = version | SHRINKING;
+    nL.m_version = leftVersion | SHRINKING;
+
+    n.m_left = nLRR;
+    if (nLRR != null)
+      nLRR.m_parent = n;
+
+    nL.m_right = nLRL;
+    if (nLRL != null)
+      nLRL.m_parent = nL;
+
+    nLR.m_left = nL;
+    nL.m_parent = nLR;
+    nLR.m_right = n;
+    n.m_parent = nLR;
+
+    if (nPL == n) nParent.m_left = nLR;
+    else nParent.m_right = nLR;
+    nLR.m_parent = nParent;
+
+    int hNRepl = 1 + Math.max(hLRR, hR);
+    n.m_height = hNRepl;
+    int hLRepl = 1 + Math.max(hLL, hLRL);
+    nL.m_height = hLRepl;
+    nLR.m_height = 1 + Math.max(hLRepl, hNRepl);
+
+    n.m_version = version + SHRINK_COUNT_INCR;
+    nL.m_version = leftVersion + SHRINK_COUNT_INCR;
+
+    int balN = hLRR - hR;
+    if (balN < -1 || balN > 1)
+      return n;
+    if ((nLRR == null || hR == 0) && !n.m_present)
+      return n;
+    int balLR = hLRepl - hNRepl;
+    if (balLR < -1 || balLR > 1)
+      return nLR;
+    return fixHeight(nParent);
+  }
+
+  private Node rotateLeftOverRight_nl(Node nParent, Node n, int hL, Node nR, Node nRL, int hRR, int hRLR) {
+    long version = n.m_version;
+    long rightVersion = nR.m_version;
+
+    Node nPL = nParent.m_left;
+    Node nRLL = nRL.m_left;
+    Node nRLR = nRL.m_right;
+    int hRLL = height(nRLL);
+
+    n.m_version = version | SHRINKING;
+    nR.m_version = rightVersion | SHRINKING;
+
+    n.m_right = nRLL;
+    if (nRLL != null)
+      nRLL.m_parent = n;
+
+    nR.m_left = nRLR;
+    if (nRLR != null)
+      nRLR.m_parent = nR;
+
+    nRL.m_right = nR;
+    nR.m_parent = nRL;
+    nRL.m_left = n;
+    n.m_parent = nRL;
+
+    if (nPL == n) nParent.m_left = nRL;
+    else nParent.m_right = nRL;
+    nRL.m_parent = nParent;
+
+    int hNRepl = 1 + Math.max(hL, hRLL);
+    n.m_height = hNRepl;
+    int hRRepl = 1 + Math.max(hRLR, hRR);
+    nR.m_height = hRRepl;
+    nRL.m_height = 1 + Math.max(hNRepl, hRRepl);
+
+    n.m_version = version + SHRINK_COUNT_INCR;
+    nR.m_version = rightVersion + SHRINK_COUNT_INCR;
+
+    int balN = hRLL - hL;
+    if (balN < -1 || balN > 1)
+      return n;
+    if ((nRLL == null || hL == 0) && !n.m_present)
+      return n;
+    int balRL = hRRepl - hNRepl;
+    if (balRL < -1 || balRL > 1)
+      return nRL;
+    return fixHeight(nParent);
+  }
+
+  private static boolean isUnlinked(long version) {
+    return version == UNLINKED;
+  }
+
+  private static boolean isShrinkingOrUnlinked(long version) {
+    return (version & (SHRINKING | UNLINKED)) != 0;
+  }
+}
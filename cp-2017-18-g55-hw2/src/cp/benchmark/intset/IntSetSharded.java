@@ -0,0 +1,63 @@
+package cp.benchmark.intset;
+
+/**
+ * Splits the key range [0, range) into contiguous shards, each one an
+ * independent set. Values below 0 go to the first shard and values at or
+ * above range go to the last one.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetSharded implements IntSet {
+
+  private final IntSet[] m_shards;
+  private final int m_range;
+  private final int m_width;
+
+  public IntSetSharded(IntSet[] shards, int range) {
+    m_shards = shards;
+    m_range = range;
+    // ceiling, so that the last shard is never wider than the others
+    m_width = Math.max(1, (range + shards.length - 1) / shards.length);
+  }
+
+  public boolean add(int value) {
+    return m_shards[shardOf(value)].add(value);
+  }
+
+  public boolean remove(int value) {
+    return m_shards[shardOf(value)].remove(value);
+  }
+
+  public boolean contains(int value) {
+    return m_shards[shardOf(value)].contains(value);
+  }
+
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < m_shards.length; i++)
+      size += m_shards[i].size();
+    return size;
+  }
+
+  public void validate() {
+    for (int i = 0; i < m_shards.length; i++)
+      m_shards[i].validate();
+
+    for (int i = 1; i < m_shards.length; i++) {
+      int lower = i * m_width;
+      if (lower >= m_range)
+        break;
+      assert shardOf(lower - 1) == i - 1 && shardOf(lower) == i : "shard boundary " + lower + " is misrouted";
+      assert !m_shards[i - 1].contains(lower) : "shard " + (i - 1) + " has " + lower + " which belongs to shard " + i;
+      assert !m_shards[i].contains(lower - 1) : "shard " + i + " has " + (lower - 1) + " which belongs to shard " + (i - 1);
+    }
+  }
+
+  private int shardOf(int value) {
+    if (value < 0)
+      return 0;
+    return Math.min(value / m_width, m_shards.length - 1);
+  }
+}
@@ -0,0 +1,246 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free skip list (Fraser / Herlihy &amp; Shavit). Every level is a Harris
+ * list with marked next references, like {@link IntSetLinkedListLockFree};
+ * the bottom level defines set membership and the upper levels are shortcuts.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetSkipListLockFree implements IntSet {
+
+  static final int MAX_LEVEL = 24;
+
+  public class Node {
+    private final int m_value;
+    private final AtomicMarkableReference<Node>[] m_next;
+    private final int m_topLevel;
+
+    @SuppressWarnings("unchecked")
+    public Node(int value, int topLevel) {
+      m_value = value;
+      m_topLevel = topLevel;
+      m_next = (AtomicMarkableReference<Node>[]) new AtomicMarkableReference<?>[topLevel + 1];
+      for (int i = 0; i < m_next.length; i++)
+        m_next[i] = new AtomicMarkableReference<Node>(null, false);
+    }
+
+    public int getValue() {
+      return m_value;
+    }
+
+    public int getTopLevel() {
+      return m_topLevel;
+    }
+
+    public AtomicMarkableReference<Node> getNext(int level) {
+      return m_next[level];
+    }
+  }
+
+  private final Node m_first;
+  private final Node m_last;
+  private LongAdder adds;
+  private LongAdder rems;
+
+  public IntSetSkipListLockFree() {
+    Node min = new Node(Integer.MIN_VALUE, MAX_LEVEL);
+    Node max = new Node(Integer.MAX_VALUE, MAX_LEVEL);
+    for (int i = 0; i <= MAX_LEVEL; i++)
+      min.getNext(i).set(max, false);
+    m_first = min;
+    m_last = max;
+    adds = new LongAdder();
+    rems = new LongAdder();
+  }
+
+  public boolean add(int value) {
+    checkValue(value);
+    int topLevel = randomLevel();
+    Node[] preds = new Node[MAX_LEVEL + 1];
+    Node[] succs = new Node[MAX_LEVEL + 1];
+
+    while (true) {
+      if (find(value, preds, succs))
+        return false;
+
+      Node node = new Node(value, topLevel);
+      for (int level = 0; level <= topLevel; level++)
+        node.getNext(level).set(succs[level], false);
+
+      // linearization point: node becomes a member once linked at the bottom
+      if (!preds[0].getNext(0).compareAndSet(succs[0], node, false, false))
+        continue;
+      adds.increment();
+
+      for (int level = 1; level <= topLevel; level++) {
+        while (true) {
+          Node succ = succs[level];
+          AtomicMarkableReference<Node> next = node.getNext(level);
+          // node may have been removed concurrently, or find() moved succ
+          if (next.isMarked())
+            return true;
+          if (next.getReference() != succ && !next.compareAndSet(next.getReference(), succ, false, false))
+            continue;
+          if (preds[level].getNext(level).compareAndSet(succ, node, false, false))
+            break;
+          find(value, preds, succs);
+          if (succs[0] != node)
+            return true;
+        }
+      }
+      return true;
+    }
+  }
+
+  public boolean remove(int value) {
+    checkValue(value);
+    Node[] preds = new Node[MAX_LEVEL + 1];
+    Node[] succs = new Node[MAX_LEVEL + 1];
+
+    if (!find(value, preds, succs))
+      return false;
+
+    Node node = succs[0];
+    boolean[] marked = {false};
+    for (int level = node.getTopLevel(); level >= 1; level--) {
+      Node succ = node.getNext(level).get(marked);
+      while (!marked[0]) {
+        node.getNext(level).attemptMark(succ, true);
+        succ = node.getNext(level).get(marked);
+      }
+    }
+
+    Node succ = node.getNext(0).get(marked);
+    while (true) {
+      // linearization point: whoever marks the bottom level removes the value
+      boolean iMarkedIt = node.getNext(0).compareAndSet(succ, succ, false, true);
+      succ = node.getNext(0).get(marked);
+      if (iMarkedIt) {
+        rems.increment();
+        find(value, preds, succs);
+        return true;
+      } else if (marked[0])
+        return false;
+    }
+  }
+
+  public boolean contains(int value) {
+    checkValue(value);
+    boolean[] marked = {false};
+    Node previous = m_first;
+    Node curr = null;
+    Node succ = null;
+
+    for (int level = MAX_LEVEL; level >= 0; level--) {
+      curr = previous.getNext(level).getReference();
+      while (true) {
+        succ = curr.getNext(level).get(marked);
+        while (marked[0]) {
+          curr = succ;
+          succ = curr.getNext(level).get(marked);
+        }
+        if (curr.getValue() < value) {
+          previous = curr;
+          curr = succ;
+        } else break;
+      }
+    }
+
+    return (curr.getValue() == value);
+  }
+
+  public int size() {
+    return (int) (adds.sum() - rems.sum());
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int totalSize = 0;
+
+    int previous_value = m_first.getValue();
+    Node node = nextUnmarked(m_first, 0);
+    int value = node.getValue();
+    while (value < Integer.MAX_VALUE) {
+      totalSize++;
+      assert previous_value < value : "list is unordered: " + previous_value + " before " + value;
+      assert !checker.contains(value) : "list has duplicates: " + value;
+      checker.add(value);
+      previous_value = value;
+      node = nextUnmarked(node, 0);
+      value = node.getValue();
+    }
+    assert (adds.sum() - rems.sum()) == totalSize : "list has a total size of " + totalSize + " but it should be " + (adds.sum() - rems.sum());
+
+    // upper levels must be ordered sublists of the bottom level
+    for (int level = 1; level <= MAX_LEVEL; level++) {
+      previous_value = m_first.getValue();
+      node = nextUnmarked(m_first, level);
+      value = node.getValue();
+      while (value < Integer.MAX_VALUE) {
+        assert previous_value < value : "level " + level + " is unordered: " + previous_value + " before " + value;
+        assert checker.contains(value) : "level " + level + " has " + value + " which is not in the list";
+        previous_value = value;
+        node = nextUnmarked(node, level);
+        value = node.getValue();
+      }
+      assert node == m_last : "level " + level + " does not end at the tail sentinel";
+    }
+  }
+
+  private Node nextUnmarked(Node node, int level) {
+    node = node.getNext(level).getReference();
+    while (node.getNext(level).isMarked()) //se tiver marcado, nao esta na lista (logically removed)
+      node = node.getNext(level).getReference();
+    return node;
+  }
+
+  private boolean find(int value, Node[] preds, Node[] succs) {
+    boolean[] marked = {false};
+    boolean snip;
+    Node previous = null;
+    Node curr = null;
+    Node succ = null;
+
+    retry: while (true) {
+      previous = m_first;
+      for (int level = MAX_LEVEL; level >= 0; level--) {
+        curr = previous.getNext(level).getReference();
+        while (true) {
+          succ = curr.getNext(level).get(marked);
+          while (marked[0]) {
+            snip = previous.getNext(level).compareAndSet(curr, succ, false, false);
+            if (!snip)
+              continue retry;
+            curr = previous.getNext(level).getReference();
+            succ = curr.getNext(level).get(marked);
+          }
+          if (curr.getValue() < value) {
+            previous = curr;
+            curr = succ;
+          } else break;
+        }
+        preds[level] = previous;
+        succs[level] = curr;
+      }
+      return (curr.getValue() == value);
+    }
+  }
+
+  // the sentinels hold the extreme values, which find() would take for members
+  private static void checkValue(int value) {
+    if (value == Integer.MIN_VALUE || value == Integer.MAX_VALUE)
+      throw new IllegalArgumentException("value out of range: " + value);
+  }
+
+  private static int randomLevel() {
+    // geometric distribution with p = 1/2, capped at MAX_LEVEL
+    return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+  }
+}
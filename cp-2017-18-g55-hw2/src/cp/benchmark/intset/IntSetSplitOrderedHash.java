@@ -0,0 +1,164 @@
+package cp.benchmark.intset;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Split-ordered list hash set (Shalev &amp; Shavit). All elements live in a
+ * single {@link IntSetLinkedListLockFree} sorted by bit-reversed key, and each
+ * bucket is a sentinel node inside that list, so growing the table never
+ * moves elements: a new bucket is initialized lazily by splicing its sentinel
+ * after the one of its parent bucket.
+ *
+ * Only values in [0, Integer.MAX_VALUE) can be stored.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class IntSetSplitOrderedHash implements IntSet {
+
+  static final int SEGMENT_BITS = 12;
+  static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+  static final int MAX_BUCKETS = 1 << 24;
+  static final int LOAD_FACTOR = 2;
+
+  private final IntSetLinkedListLockFree m_list;
+  private final AtomicReferenceArray<AtomicReferenceArray<IntSetLinkedListLockFree.Node>> m_segments;
+  private final AtomicInteger m_buckets;
+  private final LongAdder m_count;
+
+  public IntSetSplitOrderedHash() {
+    m_list = new IntSetLinkedListLockFree();
+    m_segments = new AtomicReferenceArray<>(MAX_BUCKETS / SEGMENT_SIZE);
+    m_buckets = new AtomicInteger(2);
+    m_count = new LongAdder();
+    // the head of the list (Integer.MIN_VALUE) is the sentinel of bucket 0
+    segment(0).set(0, m_list.getFirst());
+  }
+
+  public boolean add(int value) {
+    checkValue(value);
+    int buckets = m_buckets.get();
+    if (!m_list.add(getBucket(value & (buckets - 1)), regularKey(value)))
+      return false;
+    // reading the sum only touches the cells, so adds still do not share a counter
+    m_count.increment();
+    if (m_count.sum() / buckets > LOAD_FACTOR && buckets < MAX_BUCKETS)
+      m_buckets.compareAndSet(buckets, buckets << 1);
+    return true;
+  }
+
+  public boolean remove(int value) {
+    checkValue(value);
+    int buckets = m_buckets.get();
+    if (!m_list.remove(getBucket(value & (buckets - 1)), regularKey(value)))
+      return false;
+    m_count.decrement();
+    return true;
+  }
+
+  public boolean contains(int value) {
+    checkValue(value);
+    int buckets = m_buckets.get();
+    return m_list.contains(getBucket(value & (buckets - 1)), regularKey(value));
+  }
+
+  public int size() {
+    return (int) m_count.sum();
+  }
+
+  public void validate() {
+    java.util.Set<Integer> checker = new java.util.HashSet<>();
+    int totalSize = 0;
+    int sentinels = 0;
+
+    IntSetLinkedListLockFree.Node node = m_list.getFirst();
+    int previous_key = node.getValue();
+    node = node.getNext().getReference();
+    while (node.getValue() < Integer.MAX_VALUE) {
+      int key = node.getValue();
+      if (!node.getNext().isMarked()) {
+        assert previous_key < key : "list is unordered: " + previous_key + " before " + key;
+        if (isRegularKey(key)) {
+          int value = valueOf(key);
+          assert !checker.contains(value) : "list has duplicates: " + value;
+          checker.add(value);
+          totalSize++;
+        } else {
+          int bucket = valueOf(key);
+          assert segment(bucket).get(bucket & (SEGMENT_SIZE - 1)) == node : "bucket " + bucket + " is not in the table";
+          sentinels++;
+        }
+        previous_key = key;
+      }
+      node = node.getNext().getReference();
+    }
+
+    int initialized = 1;
+    for (int bucket = 1; bucket < m_buckets.get(); bucket++) {
+      AtomicReferenceArray<IntSetLinkedListLockFree.Node> segment = m_segments.get(bucket >>> SEGMENT_BITS);
+      if (segment != null && segment.get(bucket & (SEGMENT_SIZE - 1)) != null)
+        initialized++;
+    }
+    assert sentinels + 1 == initialized : "list has " + (sentinels + 1) + " bucket sentinels but " + initialized + " buckets are initialized";
+    assert m_count.sum() == totalSize : "list has a total size of " + totalSize + " but it should be " + m_count.sum();
+    assert (m_list.getAdds() - m_list.getRemoves()) == totalSize : "list has a total size of " + totalSize + " but it should be " + (m_list.getAdds() - m_list.getRemoves());
+  }
+
+  private IntSetLinkedListLockFree.Node getBucket(int bucket) {
+    AtomicReferenceArray<IntSetLinkedListLockFree.Node> segment = segment(bucket);
+    IntSetLinkedListLockFree.Node sentinel = segment.get(bucket & (SEGMENT_SIZE - 1));
+    if (sentinel == null)
+      sentinel = initializeBucket(bucket, segment);
+    return sentinel;
+  }
+
+  private IntSetLinkedListLockFree.Node initializeBucket(int bucket, AtomicReferenceArray<IntSetLinkedListLockFree.Node> segment) {
+    // the parent bucket is the one that split into this one: drop the top bit
+    int parent = bucket & ~Integer.highestOneBit(bucket);
+    IntSetLinkedListLockFree.Node sentinel = m_list.addSentinel(getBucket(parent), sentinelKey(bucket));
+    // concurrent initializers find the same node, so a lost race is harmless
+    segment.compareAndSet(bucket & (SEGMENT_SIZE - 1), null, sentinel);
+    return sentinel;
+  }
+
+  private AtomicReferenceArray<IntSetLinkedListLockFree.Node> segment(int bucket) {
+    int index = bucket >>> SEGMENT_BITS;
+    AtomicReferenceArray<IntSetLinkedListLockFree.Node> segment = m_segments.get(index);
+    if (segment == null) {
+      m_segments.compareAndSet(index, null, new AtomicReferenceArray<IntSetLinkedListLockFree.Node>(SEGMENT_SIZE));
+      segment = m_segments.get(index);
+    }
+    return segment;
+  }
+
+  /*
+   * Split-order keys are bit-reversed values, with the lowest bit set for
+   * regular elements and clear for bucket sentinels. They are compared as
+   * unsigned numbers, so the sign bit is flipped to fit the signed ordering
+   * of the backing list, which puts bucket 0 at Integer.MIN_VALUE.
+   */
+
+  private static int regularKey(int value) {
+    return (Integer.reverse(value) | 1) ^ Integer.MIN_VALUE;
+  }
+
+  private static int sentinelKey(int bucket) {
+    return Integer.reverse(bucket) ^ Integer.MIN_VALUE;
+  }
+
+  private static boolean isRegularKey(int key) {
+    return (key & 1) != 0;
+  }
+
+  private static int valueOf(int key) {
+    return Integer.reverse((key ^ Integer.MIN_VALUE) & ~1);
+  }
+
+  private static void checkValue(int value) {
+    if (value < 0 || value == Integer.MAX_VALUE)
+      throw new IllegalArgumentException("value out of range: " + value);
+  }
+}
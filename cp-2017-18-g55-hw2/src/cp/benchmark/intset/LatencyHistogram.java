@@ -0,0 +1,92 @@
+package cp.benchmark.intset;
+
+/**
+ * Histogram of latencies in nanoseconds, with logarithmic buckets: each
+ * power of two is split into SUB_BUCKETS linear buckets, so a recorded
+ * value is known to within 1 / SUB_BUCKETS of itself. The maximum is kept
+ * exactly.
+ *
+ * record() only increments a counter in a preallocated array. Each thread
+ * fills its own histogram, and they are merged once the run is over.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public class LatencyHistogram {
+
+  static final int SUB_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // values below SUB_BUCKETS have a bucket each, then SUB_BUCKETS per power of two
+  static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final long[] m_counts;
+  private long m_total;
+  private long m_max;
+
+  public LatencyHistogram() {
+    m_counts = new long[BUCKETS];
+    m_total = 0;
+    m_max = 0;
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0)
+      nanos = 0;
+    m_counts[index(nanos)]++;
+    m_total++;
+    if (nanos > m_max)
+      m_max = nanos;
+  }
+
+  public void merge(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++)
+      m_counts[i] += other.m_counts[i];
+    m_total += other.m_total;
+    m_max = Math.max(m_max, other.m_max);
+  }
+
+  public long getTotal() {
+    return m_total;
+  }
+
+  public long getMax() {
+    return m_max;
+  }
+
+  /**
+   * Returns the upper bound of the bucket holding the given percentile, so
+   * at least that share of the values are at or below it.
+   */
+  public long percentile(double percent) {
+    if (m_total == 0)
+      return 0;
+    long rank = (long) Math.ceil(percent / 100 * m_total);
+    if (rank < 1)
+      rank = 1;
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += m_counts[i];
+      if (seen >= rank)
+        return Math.min(highest(i), m_max);
+    }
+    return m_max;
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  static long highest(int index) {
+    if (index < SUB_BUCKETS)
+      return index;
+    int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+    long sub = index % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BITS);
+    return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+  }
+}
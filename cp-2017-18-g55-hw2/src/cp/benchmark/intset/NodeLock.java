@@ -0,0 +1,267 @@
+package cp.benchmark.intset;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Lock of a node in the fine-grained lists, or of the whole list in
+ * {@link IntSetLinkedListGlobalLock}, so that the lock implementation can be
+ * chosen from the benchmark options. None of them is reentrant, and the lists
+ * never need them to be.
+ *
+ * The spin locks yield after a while, so that a preempted holder gets to run
+ * when there are more threads than cores.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+public interface NodeLock {
+
+  String KINDS = "Reentrant|Spin|TTAS|MCS|CLH|Ticket|Cohort|Stamped";
+
+  void lock();
+
+  void unlock();
+
+  /**
+   * Returns the factory of the locks of the given kind, or null if there is
+   * no such kind.
+   */
+  static Supplier<NodeLock> factory(String kind) {
+    if (kind.equals("Reentrant")) return Reentrant::new;
+    else if (kind.equals("Spin")) return Spin::new;
+    else if (kind.equals("TTAS")) return TTAS::new;
+    else if (kind.equals("MCS")) return MCS::new;
+    else if (kind.equals("CLH")) return CLH::new;
+    else if (kind.equals("Ticket")) return Ticket::new;
+    else if (kind.equals("Cohort")) return Cohort::new;
+    else if (kind.equals("Stamped")) return Stamped::new;
+    else return null;
+  }
+
+  static void pause(int spins) {
+    if (spins < 64) Thread.onSpinWait();
+    else Thread.yield();
+  }
+
+  /** What the lists used before: ReentrantLock and its Sync, two objects. */
+  class Reentrant extends ReentrantLock implements NodeLock {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /** Test-and-set on a single int, the smallest lock object there is. */
+  class Spin implements NodeLock {
+    private static final VarHandle STATE = handle(Spin.class, "m_state", int.class);
+    private volatile int m_state;
+
+    public void lock() {
+      for (int spins = 0; !STATE.compareAndSet(this, 0, 1); spins++)
+        pause(spins);
+    }
+
+    public void unlock() {
+      m_state = 0;
+    }
+  }
+
+  /**
+   * Test-and-test-and-set: waiters spin on a read, and back off exponentially
+   * after a failed CAS to keep the line from bouncing.
+   */
+  class TTAS implements NodeLock {
+    private static final VarHandle STATE = handle(TTAS.class, "m_state", int.class);
+    private static final int MIN_DELAY = 4;
+    private static final int MAX_DELAY = 1024;
+    private volatile int m_state;
+
+    public void lock() {
+      int delay = MIN_DELAY;
+      int spins = 0;
+      while (true) {
+        while (m_state != 0)
+          pause(spins++);
+        if (STATE.compareAndSet(this, 0, 1))
+          return;
+        for (int i = 0; i < delay; i++)
+          pause(spins++);
+        delay = Math.min(delay << 1, MAX_DELAY);
+      }
+    }
+
+    public void unlock() {
+      m_state = 0;
+    }
+  }
+
+  /**
+   * MCS queue lock: each waiter spins on its own queue node, and the holder
+   * hands the lock over to its successor. The queue node of the holder is
+   * kept in the lock, since a thread can hold several node locks.
+   */
+  class MCS implements NodeLock {
+    private static final VarHandle TAIL = handle(MCS.class, "m_tail", QNode.class);
+    private volatile QNode m_tail;
+    private QNode m_holder;
+
+    static final class QNode {
+      volatile boolean m_locked;
+      volatile QNode m_next;
+    }
+
+    public void lock() {
+      QNode node = new QNode();
+      QNode previous = (QNode) TAIL.getAndSet(this, node);
+      if (previous != null) {
+        node.m_locked = true;
+        previous.m_next = node;
+        for (int spins = 0; node.m_locked; spins++)
+          pause(spins);
+      }
+      m_holder = node;
+    }
+
+    public void unlock() {
+      QNode node = m_holder;
+      // do not keep the queue node alive with the lock
+      m_holder = null;
+      if (node.m_next == null) {
+        if (TAIL.compareAndSet(this, node, null))
+          return;
+        // a successor is linking itself
+        for (int spins = 0; node.m_next == null; spins++)
+          pause(spins);
+      }
+      node.m_next.m_locked = false;
+    }
+  }
+
+  /**
+   * CLH queue lock: each waiter spins on the queue node of its predecessor,
+   * which the predecessor clears on release. An empty queue is a null tail
+   * rather than a released node, so a free lock holds no queue node.
+   */
+  class CLH implements NodeLock {
+    private static final VarHandle TAIL = handle(CLH.class, "m_tail", QNode.class);
+    private volatile QNode m_tail;
+    private QNode m_holder;
+
+    static final class QNode {
+      volatile boolean m_locked;
+    }
+
+    public void lock() {
+      QNode node = new QNode();
+      node.m_locked = true;
+      QNode previous = (QNode) TAIL.getAndSet(this, node);
+      if (previous != null) {
+        for (int spins = 0; previous.m_locked; spins++)
+          pause(spins);
+      }
+      m_holder = node;
+    }
+
+    public void unlock() {
+      QNode node = m_holder;
+      m_holder = null;
+      if (!TAIL.compareAndSet(this, node, null))
+        node.m_locked = false;
+    }
+  }
+
+  /**
+   * Ticket lock: FIFO like the queue locks, but all waiters spin on the same
+   * counter. Any thread may release it, which the cohort lock relies on.
+   */
+  class Ticket implements NodeLock {
+    private static final VarHandle NEXT = handle(Ticket.class, "m_next", int.class);
+    private volatile int m_next;
+    private volatile int m_serving;
+
+    public void lock() {
+      int ticket = (int) NEXT.getAndAdd(this, 1);
+      for (int spins = 0; m_serving != ticket; spins++)
+        pause(spins);
+    }
+
+    public void unlock() {
+      m_serving = m_serving + 1;
+    }
+
+    // only meaningful for the holder
+    public boolean hasWaiters() {
+      return m_next - m_serving > 1;
+    }
+  }
+
+  /**
+   * NUMA-oblivious cohort lock (Dice, Marathe &amp; Shavit): threads are split
+   * into cohorts by id, each with a local ticket lock, on top of a global
+   * ticket lock. A releasing thread hands the global lock over to a waiter of
+   * its own cohort, up to MAX_PASSES times in a row, so the lock and the data
+   * it guards tend to stay within one group of threads.
+   */
+  class Cohort implements NodeLock {
+    static final int COHORTS = 4;
+    static final int MAX_PASSES = 64;
+    private final Ticket m_global = new Ticket();
+    private final Ticket[] m_locals = new Ticket[COHORTS];
+    // guarded by the local lock of each cohort
+    private final boolean[] m_owned = new boolean[COHORTS];
+    private final int[] m_passes = new int[COHORTS];
+    private int m_cohort;
+
+    public Cohort() {
+      for (int i = 0; i < COHORTS; i++)
+        m_locals[i] = new Ticket();
+    }
+
+    public void lock() {
+      int cohort = (int) (Thread.currentThread().getId() % COHORTS);
+      m_locals[cohort].lock();
+      // the global lock may have been passed along with the local one
+      if (!m_owned[cohort])
+        m_global.lock();
+      m_cohort = cohort;
+    }
+
+    public void unlock() {
+      int cohort = m_cohort;
+      Ticket local = m_locals[cohort];
+      if (local.hasWaiters() && m_passes[cohort] < MAX_PASSES) {
+        m_owned[cohort] = true;
+        m_passes[cohort]++;
+      } else {
+        m_owned[cohort] = false;
+        m_passes[cohort] = 0;
+        m_global.unlock();
+      }
+      local.unlock();
+    }
+  }
+
+  /** Write mode of a StampedLock, with the stamp of the holder kept aside. */
+  class Stamped implements NodeLock {
+    private final StampedLock m_lock = new StampedLock();
+    private long m_stamp;
+
+    public void lock() {
+      m_stamp = m_lock.writeLock();
+    }
+
+    public void unlock() {
+      m_lock.unlockWrite(m_stamp);
+    }
+  }
+
+  private static VarHandle handle(Class<?> owner, String field, Class<?> type) {
+    try {
+      return MethodHandles.lookup().findVarHandle(owner, field, type);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+}
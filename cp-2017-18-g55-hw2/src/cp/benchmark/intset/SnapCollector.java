@@ -0,0 +1,111 @@
+package cp.benchmark.intset;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Snapshot collector (Petrank &amp; Timnat) for the lists whose nodes are
+ * logically removed by a mark. A scan installs a collector and adds every
+ * unmarked node it traverses. While the collector is active, updates report
+ * the nodes they insert or mark, and operations report the nodes their
+ * result relies on. The snapshot is the set of collected or inserted nodes
+ * minus the deleted ones, which makes the scan linearizable.
+ *
+ * Nodes are compared by identity, so a value removed and added again is
+ * told apart by its new node.
+ *
+ * @author Pascal Felber
+ * @author Tiago Vale
+ * @since 0.1
+ */
+class SnapCollector {
+
+  static final class Report {
+    final Object m_node;
+    final int m_value;
+    final boolean m_inserted;
+    final Report m_next;
+
+    Report(Object node, int value, boolean inserted, Report next) {
+      m_node = node;
+      m_value = value;
+      m_inserted = inserted;
+      m_next = next;
+    }
+  }
+
+  private static final Report BLOCKED = new Report(null, 0, false, null);
+
+  private final AtomicReference<Report> m_reports;
+  private volatile boolean m_active;
+  private Object[] m_nodes;
+  private int[] m_values;
+  private int m_size;
+
+  SnapCollector() {
+    m_reports = new AtomicReference<Report>(null);
+    m_active = true;
+    m_nodes = new Object[64];
+    m_values = new int[64];
+    m_size = 0;
+  }
+
+  boolean isActive() {
+    return m_active;
+  }
+
+  void report(Object node, int value, boolean inserted) {
+    Report head;
+    Report report = null;
+    do {
+      head = m_reports.get();
+      if (head == BLOCKED)
+        return;
+      report = new Report(node, value, inserted, head);
+    } while (!m_reports.compareAndSet(head, report));
+  }
+
+  // only called by the scanning thread
+  void addNode(Object node, int value) {
+    if (m_size == m_nodes.length) {
+      m_nodes = Arrays.copyOf(m_nodes, m_size << 1);
+      m_values = Arrays.copyOf(m_values, m_size << 1);
+    }
+    m_nodes[m_size] = node;
+    m_values[m_size] = value;
+    m_size++;
+  }
+
+  /**
+   * Ends the scan and returns the sorted values of [lo, hi) in the snapshot.
+   */
+  int[] finish(int lo, int hi) {
+    m_active = false;
+    Report reports = m_reports.getAndSet(BLOCKED);
+
+    IdentityHashMap<Object, Boolean> deleted = new IdentityHashMap<>();
+    IdentityHashMap<Object, Integer> present = new IdentityHashMap<>();
+    for (Report r = reports; r != null; r = r.m_next) {
+      if (!r.m_inserted)
+        deleted.put(r.m_node, Boolean.TRUE);
+      else if (r.m_value >= lo && r.m_value < hi)
+        present.put(r.m_node, r.m_value);
+    }
+    for (int i = 0; i < m_size; i++)
+      present.put(m_nodes[i], m_values[i]);
+
+    int[] values = new int[present.size()];
+    int size = 0;
+    for (java.util.Map.Entry<Object, Integer> entry : present.entrySet())
+      if (!deleted.containsKey(entry.getKey()))
+        values[size++] = entry.getValue();
+    Arrays.sort(values, 0, size);
+
+    int unique = 0;
+    for (int i = 0; i < size; i++)
+      if (unique == 0 || values[i] != values[unique - 1])
+        values[unique++] = values[i];
+    return Arrays.copyOf(values, unique);
+  }
+}